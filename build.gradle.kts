@@ -42,6 +42,84 @@ tasks.test {
     useJUnitPlatform()
     filter {
         includeTestsMatching("UpdatePortalTest")
+        includeTestsMatching("InventoryScannerTest")
+        includeTestsMatching("FlathubClientTest")
+        includeTestsMatching("TokenBucketTest")
+        includeTestsMatching("CircuitBreakerTest")
+        includeTestsMatching("UpdateSweepTest")
+        includeTestsMatching("PortalOptionsTest")
+        includeTestsMatching("StateHandoffTest")
+        includeTestsMatching("FileDescriptorsTest")
+        includeTestsMatching("UpdateProgressTrackerTest")
+        includeTestsMatching("LatencyHistogramTest")
+        includeTestsMatching("UpdateEventPublisherTest")
+        includeTestsMatching("UpdateCheckCliTest")
+        includeTestsMatching("UpdateCheckerDaemonTest")
+        includeTestsMatching("SignalDispatcherTest")
+        includeTestsMatching("MessageHandlerTest")
+    }
+}
+
+val stressTest by tasks.registering(Test::class) {
+    description = "Runs the concurrency stress tests."
+    group = "verification"
+    testClassesDirs = sourceSets.test.get().output.classesDirs
+    classpath = sourceSets.test.get().runtimeClasspath
+    useJUnitPlatform()
+    filter {
+        includeTestsMatching("*StressTest")
+    }
+}
+
+// AOT cache (JEP 483) for apps embedding the library. The cache only covers classes loaded from the class path,
+// so the training and benchmark runs use the class path, not the module path.
+val aotConfiguration = layout.buildDirectory.file("aot/flatpak-update-portal.aotconf")
+val aotCacheFile = layout.buildDirectory.file("aot/flatpak-update-portal.aot")
+
+val aotTraining by tasks.registering(JavaExec::class) {
+    group = "aot"
+    description = "Records the classes loaded while starting the portal into an AOT configuration."
+    classpath = sourceSets.test.get().runtimeClasspath
+    mainClass.set("org.purejava.portal.StartupBenchmark")
+    outputs.file(aotConfiguration)
+    doFirst {
+        aotConfiguration.get().asFile.parentFile.mkdirs()
+        jvmArgs("-XX:AOTMode=record", "-XX:AOTConfiguration=${aotConfiguration.get().asFile}")
+    }
+}
+
+val aotCache by tasks.registering(JavaExec::class) {
+    group = "aot"
+    description = "Creates an AOT cache for the portal from the recorded AOT configuration."
+    dependsOn(aotTraining)
+    classpath = sourceSets.test.get().runtimeClasspath
+    mainClass.set("org.purejava.portal.StartupBenchmark")
+    inputs.file(aotConfiguration)
+    outputs.file(aotCacheFile)
+    doFirst {
+        jvmArgs(
+            "-XX:AOTMode=create",
+            "-XX:AOTConfiguration=${aotConfiguration.get().asFile}",
+            "-XX:AOTCache=${aotCacheFile.get().asFile}"
+        )
+    }
+}
+
+tasks.register<JavaExec>("startupBenchmark") {
+    group = "aot"
+    description = "Measures the time from JVM start to a usable portal, without AOT cache."
+    classpath = sourceSets.test.get().runtimeClasspath
+    mainClass.set("org.purejava.portal.StartupBenchmark")
+}
+
+tasks.register<JavaExec>("startupBenchmarkAot") {
+    group = "aot"
+    description = "Measures the time from JVM start to a usable portal, using the AOT cache."
+    dependsOn(aotCache)
+    classpath = sourceSets.test.get().runtimeClasspath
+    mainClass.set("org.purejava.portal.StartupBenchmark")
+    doFirst {
+        jvmArgs("-XX:AOTCache=${aotCacheFile.get().asFile}")
     }
 }
 
@@ -3,9 +3,12 @@ module org.purejava.portal {
     requires org.freedesktop.dbus;
     requires org.slf4j;
     requires java.net.http;
+    requires java.xml;
     requires com.fasterxml.jackson.databind;
 
     exports org.purejava.portal;
     exports org.purejava.portal.rest;
     exports org.purejava.portal.freedesktop.dbus.handlers;
+    exports org.purejava.portal.cli;
+    exports org.purejava.portal.inventory;
 }
\ No newline at end of file
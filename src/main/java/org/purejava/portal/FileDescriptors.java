@@ -0,0 +1,287 @@
+package org.purejava.portal;
+
+import org.freedesktop.dbus.FileDescriptor;
+
+import java.io.IOException;
+import java.lang.foreign.Arena;
+import java.lang.foreign.FunctionDescriptor;
+import java.lang.foreign.Linker;
+import java.lang.foreign.MemoryLayout;
+import java.lang.foreign.MemorySegment;
+import java.lang.foreign.StructLayout;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.VarHandle;
+import java.nio.ByteBuffer;
+import java.nio.channels.ByteChannel;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.FileChannel;
+import java.nio.file.OpenOption;
+import java.nio.file.Path;
+
+import static java.lang.foreign.ValueLayout.ADDRESS;
+import static java.lang.foreign.ValueLayout.JAVA_INT;
+import static java.lang.foreign.ValueLayout.JAVA_LONG;
+
+/**
+ * Creates file descriptors that can be handed to a spawned instance as they are, see {@link SpawnFds}.
+ * Native calls go through the Foreign Function API, so applications should run with
+ * {@code --enable-native-access=org.purejava.portal} to avoid warnings.
+ */
+public final class FileDescriptors {
+
+    private static final int O_CLOEXEC = 0x80000;
+    private static final int MFD_CLOEXEC = 0x1;
+    private static final int AF_UNIX = 1;
+    private static final int SOCK_STREAM = 1;
+    private static final int SOCK_CLOEXEC = 0x80000;
+    private static final int F_DUPFD_CLOEXEC = 1030;
+    private static final int EINTR = 4;
+
+    private static final Linker LINKER = Linker.nativeLinker();
+    // every call but strerror() captures errno, passed as the first argument
+    private static final Linker.Option ERRNO = Linker.Option.captureCallState("errno");
+    private static final StructLayout CALL_STATE = Linker.Option.captureStateLayout();
+    private static final VarHandle CALL_STATE_ERRNO = CALL_STATE.varHandle(MemoryLayout.PathElement.groupElement("errno"));
+    private static final MethodHandle PIPE2 = libc("pipe2", FunctionDescriptor.of(JAVA_INT, ADDRESS, JAVA_INT), ERRNO);
+    private static final MethodHandle SOCKETPAIR = libc("socketpair", FunctionDescriptor.of(JAVA_INT, JAVA_INT, JAVA_INT, JAVA_INT, ADDRESS), ERRNO);
+    private static final MethodHandle MEMFD_CREATE = libc("memfd_create", FunctionDescriptor.of(JAVA_INT, ADDRESS, JAVA_INT), ERRNO);
+    private static final MethodHandle FCNTL = libc("fcntl", FunctionDescriptor.of(JAVA_INT, JAVA_INT, JAVA_INT, JAVA_INT), Linker.Option.firstVariadicArg(2), ERRNO);
+    private static final MethodHandle READ = libc("read", FunctionDescriptor.of(JAVA_LONG, JAVA_INT, ADDRESS, JAVA_LONG), ERRNO);
+    private static final MethodHandle WRITE = libc("write", FunctionDescriptor.of(JAVA_LONG, JAVA_INT, ADDRESS, JAVA_LONG), ERRNO);
+    private static final MethodHandle CLOSE = libc("close", FunctionDescriptor.of(JAVA_INT, JAVA_INT), ERRNO);
+    private static final MethodHandle STRERROR = libc("strerror", FunctionDescriptor.of(ADDRESS, JAVA_INT));
+
+    /**
+     * Both ends of a pipe or socket pair.
+     *
+     * @param first  the read end of a pipe, or one end of a socket pair
+     * @param second the write end of a pipe, or the other end of a socket pair
+     */
+    public record Pair(FileDescriptor first, FileDescriptor second) {
+    }
+
+    private FileDescriptors() {
+    }
+
+    /**
+     * Creates a pipe.
+     *
+     * @return the read end as {@link Pair#first()} and the write end as {@link Pair#second()}
+     * @throws IOException if the pipe cannot be created
+     */
+    public static Pair pipe() throws IOException {
+        try (var arena = Arena.ofConfined()) {
+            var fds = arena.allocate(JAVA_INT, 2);
+            var state = arena.allocate(CALL_STATE);
+            check("pipe2", (int) PIPE2.invokeExact(state, fds, O_CLOEXEC), state);
+            return pairOf(fds);
+        } catch (IOException e) {
+            throw e;
+        } catch (Throwable t) {
+            throw new IOException("pipe2 failed", t);
+        }
+    }
+
+    /**
+     * Creates a connected pair of Unix stream sockets.
+     *
+     * @return both ends of the connection, see {@link #channel(FileDescriptor)} to read and write them
+     * @throws IOException if the socket pair cannot be created
+     */
+    public static Pair socketPair() throws IOException {
+        try (var arena = Arena.ofConfined()) {
+            var fds = arena.allocate(JAVA_INT, 2);
+            var state = arena.allocate(CALL_STATE);
+            check("socketpair", (int) SOCKETPAIR.invokeExact(state, AF_UNIX, SOCK_STREAM | SOCK_CLOEXEC, 0, fds), state);
+            return pairOf(fds);
+        } catch (IOException e) {
+            throw e;
+        } catch (Throwable t) {
+            throw new IOException("socketpair failed", t);
+        }
+    }
+
+    /**
+     * Creates an anonymous file that lives in memory only.
+     *
+     * @param name name of the file, for debugging purposes only
+     * @return the file descriptor of the file
+     * @throws IOException if the file cannot be created
+     */
+    public static FileDescriptor memfd(String name) throws IOException {
+        try (var arena = Arena.ofConfined()) {
+            var state = arena.allocate(CALL_STATE);
+            var fd = (int) MEMFD_CREATE.invokeExact(state, arena.allocateFrom(name), MFD_CLOEXEC);
+            check("memfd_create", fd, state);
+            return new FileDescriptor(fd);
+        } catch (IOException e) {
+            throw e;
+        } catch (Throwable t) {
+            throw new IOException("memfd_create failed", t);
+        }
+    }
+
+    /**
+     * Opens a channel on a file descriptor, e.g. to fill a memfd or to write to a pipe.
+     * The channel uses a file descriptor of its own, closing it does not close {@code fd}.
+     * <p>
+     * The file is reopened through {@code /proc/self/fd}, which fails for sockets; use {@link #channel(FileDescriptor)}
+     * for those.
+     *
+     * @param fd      the file descriptor to open
+     * @param options how to open it, see {@link FileChannel#open(Path, OpenOption...)}
+     * @return the channel
+     * @throws IOException if the channel cannot be opened
+     */
+    public static FileChannel open(FileDescriptor fd, OpenOption... options) throws IOException {
+        return FileChannel.open(Path.of("/proc/self/fd", String.valueOf(fd.getIntFileDescriptor())), options);
+    }
+
+    /**
+     * Wraps a file descriptor of any kind, e.g. an end of a {@link #socketPair()}, in a channel that reads and writes
+     * it directly. The channel uses a duplicate of {@code fd}, closing it does not close {@code fd}.
+     * <p>
+     * Reads and writes block in native code, so they are not interrupted by closing the channel or by
+     * {@link Thread#interrupt()}.
+     *
+     * @param fd the file descriptor to wrap
+     * @return the channel
+     * @throws IOException if {@code fd} cannot be duplicated
+     */
+    public static ByteChannel channel(FileDescriptor fd) throws IOException {
+        try (var arena = Arena.ofConfined()) {
+            var state = arena.allocate(CALL_STATE);
+            var duplicate = (int) FCNTL.invokeExact(state, fd.getIntFileDescriptor(), F_DUPFD_CLOEXEC, 0);
+            check("fcntl", duplicate, state);
+            return new RawChannel(duplicate);
+        } catch (IOException e) {
+            throw e;
+        } catch (Throwable t) {
+            throw new IOException("fcntl failed", t);
+        }
+    }
+
+    /**
+     * Closes a file descriptor created by this class.
+     *
+     * @param fd the file descriptor to close
+     * @throws IOException if closing fails
+     */
+    public static void close(FileDescriptor fd) throws IOException {
+        close(fd.getIntFileDescriptor());
+    }
+
+    private static void close(int fd) throws IOException {
+        try (var arena = Arena.ofConfined()) {
+            var state = arena.allocate(CALL_STATE);
+            check("close", (int) CLOSE.invokeExact(state, fd), state);
+        } catch (IOException e) {
+            throw e;
+        } catch (Throwable t) {
+            throw new IOException("close failed", t);
+        }
+    }
+
+    private static Pair pairOf(MemorySegment fds) {
+        return new Pair(new FileDescriptor(fds.getAtIndex(JAVA_INT, 0)), new FileDescriptor(fds.getAtIndex(JAVA_INT, 1)));
+    }
+
+    /**
+     * @param state the call state captured by the call
+     * @throws IOException naming the error reported by errno if {@code result} is negative
+     */
+    private static void check(String call, long result, MemorySegment state) throws IOException {
+        if (result >= 0) return;
+        var errno = errno(state);
+        throw new IOException(call + " failed: " + strerror(errno) + " (errno " + errno + ")");
+    }
+
+    private static int errno(MemorySegment state) {
+        return (int) CALL_STATE_ERRNO.get(state, 0L);
+    }
+
+    private static String strerror(int errno) {
+        try {
+            var message = (MemorySegment) STRERROR.invokeExact(errno);
+            return message.reinterpret(Integer.MAX_VALUE).getString(0);
+        } catch (Throwable t) {
+            return "unknown error";
+        }
+    }
+
+    private static MethodHandle libc(String name, FunctionDescriptor descriptor, Linker.Option... options) {
+        return LINKER.defaultLookup().find(name)
+                .map(symbol -> LINKER.downcallHandle(symbol, descriptor, options))
+                .orElseThrow(() -> new UnsatisfiedLinkError("libc function not found: " + name));
+    }
+
+    /**
+     * Reads and writes a file descriptor with read() and write(), retrying calls interrupted by a signal.
+     */
+    private static final class RawChannel implements ByteChannel {
+        private final int fd;
+        private volatile boolean open = true;
+
+        private RawChannel(int fd) {
+            this.fd = fd;
+        }
+
+        @Override
+        public int read(ByteBuffer dst) throws IOException {
+            if (!open) throw new ClosedChannelException();
+            var length = dst.remaining();
+            if (length == 0) return 0;
+            try (var arena = Arena.ofConfined()) {
+                var buffer = arena.allocate(length);
+                var state = arena.allocate(CALL_STATE);
+                long read;
+                do {
+                    read = (long) READ.invokeExact(state, fd, buffer, (long) length);
+                } while (read < 0 && errno(state) == EINTR);
+                check("read", read, state);
+                if (read == 0) return -1;
+                dst.put(buffer.asSlice(0, read).asByteBuffer());
+                return (int) read;
+            } catch (IOException e) {
+                throw e;
+            } catch (Throwable t) {
+                throw new IOException("read failed", t);
+            }
+        }
+
+        @Override
+        public int write(ByteBuffer src) throws IOException {
+            if (!open) throw new ClosedChannelException();
+            var length = src.remaining();
+            if (length == 0) return 0;
+            try (var arena = Arena.ofConfined()) {
+                var buffer = arena.allocate(length);
+                buffer.asByteBuffer().put(src.duplicate());
+                var state = arena.allocate(CALL_STATE);
+                long written;
+                do {
+                    written = (long) WRITE.invokeExact(state, fd, buffer, (long) length);
+                } while (written < 0 && errno(state) == EINTR);
+                check("write", written, state);
+                src.position(src.position() + (int) written);
+                return (int) written;
+            } catch (IOException e) {
+                throw e;
+            } catch (Throwable t) {
+                throw new IOException("write failed", t);
+            }
+        }
+
+        @Override
+        public boolean isOpen() {
+            return open;
+        }
+
+        @Override
+        public synchronized void close() throws IOException {
+            if (!open) return;
+            open = false;
+            FileDescriptors.close(fd);
+        }
+    }
+}
@@ -0,0 +1,114 @@
+package org.purejava.portal;
+
+import org.freedesktop.dbus.interfaces.DBus;
+import org.purejava.portal.freedesktop.dbus.handlers.SignalDispatcher;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.Arrays;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+
+/**
+ * Keeps track of whether a D-Bus service is available, without asking the bus every time.
+ * <p>
+ * The state is read once from the bus and then kept up to date by watching {@code NameOwnerChanged}.
+ * A service counts as available while it owns its name or can be activated by the bus on demand. Whether it can be
+ * activated is asked again whenever the owner changes, and when it is found to be unavailable, so that a service
+ * installed or removed meanwhile is noticed. Both happen on a thread of the monitor, never on the thread dispatching
+ * the signal, as they make D-Bus calls.
+ */
+public class PortalHealthMonitor implements AutoCloseable {
+
+    private static final Logger LOG = LoggerFactory.getLogger(PortalHealthMonitor.class);
+    private static final String DBUS_PATH = "/org/freedesktop/DBus";
+
+    private final DBus dbus;
+    private final String busName;
+    private final Runnable onRestart;
+    private final ExecutorService events;
+    private final AutoCloseable subscription;
+    private volatile boolean activatable;
+    private volatile boolean running;
+
+    /**
+     * @param signals   dispatcher of the connection the service is used on
+     * @param dbus      the bus daemon
+     * @param busName   the well-known name of the service
+     * @param onRestart called when the name gets a new owner, i.e. the service was (re)started, on a thread of the
+     *                  monitor
+     */
+    public PortalHealthMonitor(SignalDispatcher signals, DBus dbus, String busName, Runnable onRestart) {
+        this.dbus = dbus;
+        this.busName = busName;
+        this.onRestart = onRestart;
+        // one thread, so that restarts are handled in the order they happened
+        this.events = Executors.newSingleThreadExecutor(Thread.ofVirtual().name("health-" + busName).factory());
+        // subscribe first, so that no change between reading the state and subscribing is missed
+        // only changes of busName, not every client connecting to or leaving the bus
+        this.subscription = signals.subscribe(DBus.NameOwnerChanged.class, DBUS_PATH, busName, this::ownerChanged);
+
+        if (null != dbus) {
+            try {
+                running = dbus.NameHasOwner(busName);
+            } catch (RuntimeException e) {
+                LOG.error(e.toString(), e.getCause());
+            }
+        }
+        refreshActivatable();
+    }
+
+    private void ownerChanged(DBus.NameOwnerChanged signal) {
+        if (!busName.equals(signal.name)) return;
+
+        var owned = !Util.varIsEmpty(signal.newOwner);
+        running = owned;
+        LOG.debug("{} {}", busName, owned ? "started" : "stopped");
+        try {
+            events.execute(() -> {
+                refreshActivatable();
+                if (owned && null != onRestart) onRestart.run();
+            });
+        } catch (RejectedExecutionException e) {
+            LOG.debug("Ignoring owner change of {} as the monitor is closed", busName);
+        }
+    }
+
+    private void refreshActivatable() {
+        if (null == dbus) return;
+        try {
+            activatable = Arrays.asList(dbus.ListActivatableNames()).contains(busName);
+        } catch (RuntimeException e) {
+            LOG.error(e.toString(), e.getCause());
+        }
+    }
+
+    /**
+     * @return true if the service is running or can be activated
+     */
+    public boolean isAvailable() {
+        if (running || activatable) return true;
+        // not known to be available, the service may have been installed since
+        refreshActivatable();
+        return running || activatable;
+    }
+
+    /**
+     * @return true if the service is running
+     */
+    public boolean isRunning() {
+        return running;
+    }
+
+    @Override
+    public void close() {
+        events.shutdown();
+        if (null == subscription) return;
+        try {
+            subscription.close();
+        } catch (Exception e) {
+            LOG.error(e.toString(), e.getCause());
+        }
+    }
+}
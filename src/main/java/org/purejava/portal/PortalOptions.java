@@ -0,0 +1,157 @@
+package org.purejava.portal;
+
+import org.freedesktop.dbus.types.UInt32;
+import org.freedesktop.dbus.types.Variant;
+
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Immutable vardict of options for the portal methods.
+ * <p>
+ * Build an instance once and pass it as often as needed: the {@link Variant}s are created with an explicit
+ * D-Bus signature instead of having it derived from the value by reflection, and variants for equal values are
+ * shared between all option sets.
+ * <p>
+ * The cache holds variants rather than their wire encoding on purpose. dbus-java marshals the whole body of every
+ * message it sends and has no way to take part of it pre-encoded, so an encoding could not be reused. What a variant
+ * saves is the costly part of building it, looking up the signature, while writing a few bytes per option stays
+ * with each call.
+ */
+public final class PortalOptions {
+
+    /**
+     * No options. {@code CreateUpdateMonitor} and {@code Update} don't define any options yet, so this is all they take.
+     */
+    public static final PortalOptions EMPTY = new PortalOptions(Map.of());
+
+    private static final int VARIANT_CACHE_LIMIT = 1024;
+    private static final Map<VariantKey, Variant<?>> VARIANTS = new ConcurrentHashMap<>();
+
+    private final Map<String, Variant<?>> options;
+
+    private PortalOptions(Map<String, Variant<?>> options) {
+        this.options = options;
+    }
+
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    public static SpawnBuilder spawn() {
+        return new SpawnBuilder();
+    }
+
+    /**
+     * @return the options as vardict, unmodifiable
+     */
+    public Map<String, Variant<?>> asMap() {
+        return options;
+    }
+
+    public boolean isEmpty() {
+        return options.isEmpty();
+    }
+
+    @Override
+    public String toString() {
+        return options.toString();
+    }
+
+    private record VariantKey(String signature, Object value) {
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <T> Variant<T> variant(T value, String signature) {
+        var key = new VariantKey(signature, value);
+        var cached = (Variant<T>) VARIANTS.get(key);
+        if (null != cached) return cached;
+
+        var created = new Variant<>(value, signature);
+        if (VARIANTS.size() < VARIANT_CACHE_LIMIT) VARIANTS.putIfAbsent(key, created);
+        return created;
+    }
+
+    /**
+     * Builds options of any kind.
+     */
+    public static class Builder {
+        final Map<String, Variant<?>> options = new LinkedHashMap<>();
+
+        public Builder put(String key, Variant<?> value) {
+            options.put(key, value);
+            return this;
+        }
+
+        public Builder putString(String key, String value) {
+            return put(key, variant(value, "s"));
+        }
+
+        public Builder putBoolean(String key, boolean value) {
+            return put(key, variant(value, "b"));
+        }
+
+        public Builder putUInt32(String key, long value) {
+            return put(key, variant(new UInt32(value), "u"));
+        }
+
+        public Builder putStrings(String key, List<String> values) {
+            return put(key, variant(List.copyOf(values), "as"));
+        }
+
+        public PortalOptions build() {
+            return options.isEmpty() ? EMPTY : new PortalOptions(Collections.unmodifiableMap(new LinkedHashMap<>(options)));
+        }
+    }
+
+    /**
+     * Builds the options of {@code Spawn}, see
+     * <a href="https://docs.flatpak.org/en/latest/portal-api-reference.html#gdbus-method-org-freedesktop-portal-Flatpak.Spawn">Spawn</a>.
+     * Options passing file descriptors are added with {@link #fds(SpawnFds)}.
+     */
+    public static class SpawnBuilder extends Builder {
+
+        /**
+         * Option "sandbox-expose": paths below the app's data directory to expose read-write to a sandboxed process.
+         */
+        public SpawnBuilder sandboxExpose(List<String> paths) {
+            putStrings("sandbox-expose", paths);
+            return this;
+        }
+
+        /**
+         * Option "sandbox-expose-ro": paths below the app's data directory to expose read-only to a sandboxed process.
+         */
+        public SpawnBuilder sandboxExposeReadOnly(List<String> paths) {
+            putStrings("sandbox-expose-ro", paths);
+            return this;
+        }
+
+        /**
+         * Option "sandbox-flags": flags for a sandboxed process, e.g. 1 to share the display access.
+         */
+        public SpawnBuilder sandboxFlags(long flags) {
+            putUInt32("sandbox-flags", flags);
+            return this;
+        }
+
+        /**
+         * Option "unset-env": environment variables to remove.
+         */
+        public SpawnBuilder unsetEnv(List<String> names) {
+            putStrings("unset-env", names);
+            return this;
+        }
+
+        /**
+         * Adds the options "app-fd", "usr-fd", "sandbox-expose-fd" and "sandbox-expose-fd-ro" collected in {@code fds}.
+         */
+        public SpawnBuilder fds(SpawnFds fds) {
+            options.putAll(fds.options(Map.of()));
+            return this;
+        }
+    }
+}
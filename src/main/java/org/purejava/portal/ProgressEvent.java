@@ -0,0 +1,42 @@
+package org.purejava.portal;
+
+import java.time.Duration;
+import java.time.Instant;
+
+/**
+ * A {@code Progress} signal of an update monitor, timed relative to the {@code Update} call that started the update.
+ *
+ * @param monitorPath  the object path of the update monitor
+ * @param timestamp    when the signal was received
+ * @param sinceUpdate  the time from the {@code Update} call to the signal
+ * @param nOps         "n_ops": the number of operations the update consists of, -1 if not sent
+ * @param op           "op": the position of the current operation, -1 if not sent
+ * @param progress     "progress": the progress of the current operation in percent, -1 if not sent
+ * @param status       "status": the state of the update
+ * @param error        "error": the error name if the update failed, null otherwise
+ * @param errorMessage "error_message": the error message if the update failed, null otherwise
+ */
+public record ProgressEvent(String monitorPath, Instant timestamp, Duration sinceUpdate, int nOps, int op, int progress,
+                            Status status, String error, String errorMessage) {
+
+    public enum Status {
+        RUNNING, EMPTY, DONE, FAILED;
+
+        /**
+         * @param value the "status" value of the signal
+         * @return the status, {@link #RUNNING} for unknown values
+         */
+        static Status of(long value) {
+            return switch ((int) value) {
+                case 1 -> EMPTY;
+                case 2 -> DONE;
+                case 3 -> FAILED;
+                default -> RUNNING;
+            };
+        }
+
+        public boolean isFinal() {
+            return this != RUNNING;
+        }
+    }
+}
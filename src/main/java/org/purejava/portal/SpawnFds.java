@@ -0,0 +1,142 @@
+package org.purejava.portal;
+
+import org.freedesktop.dbus.FileDescriptor;
+import org.freedesktop.dbus.types.UInt32;
+import org.freedesktop.dbus.types.Variant;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Collects the file descriptors handed to a new instance by {@link UpdatePortal#Spawn}.
+ * <p>
+ * File descriptors are passed over D-Bus as they are, so a pipe, socket or memfd created with
+ * {@link FileDescriptors} reaches the new instance without copying any data. Besides the fds mapped to
+ * fd numbers of the new process, this also builds the fd related spawn options.
+ */
+public class SpawnFds implements AutoCloseable {
+
+    private static final Logger LOG = LoggerFactory.getLogger(SpawnFds.class);
+
+    private final Map<UInt32, FileDescriptor> fds = new LinkedHashMap<>();
+    private final List<FileDescriptor> exposed = new ArrayList<>();
+    private final List<FileDescriptor> exposedReadOnly = new ArrayList<>();
+    private final List<FileDescriptor> owned = new ArrayList<>();
+    private FileDescriptor appFd;
+    private FileDescriptor usrFd;
+
+    /**
+     * Makes {@code fd} available as fd number {@code target} in the new process.
+     *
+     * @param target the fd number in the new process, e.g. 0 for stdin
+     * @param fd     the file descriptor to pass
+     * @return this
+     */
+    public SpawnFds inherit(int target, FileDescriptor fd) {
+        fds.put(new UInt32(target), fd);
+        return this;
+    }
+
+    /**
+     * Like {@link #inherit}, and closes {@code fd} in this process on {@link #close()}.
+     * Use this for fds created only to be passed on, e.g. the child's end of a pipe.
+     *
+     * @param target the fd number in the new process
+     * @param fd     the file descriptor to pass
+     * @return this
+     */
+    public SpawnFds handOver(int target, FileDescriptor fd) {
+        owned.add(fd);
+        return inherit(target, fd);
+    }
+
+    /**
+     * Option "app-fd": a directory to be mounted at /app instead of the app's files.
+     * Mutually exclusive with {@link FlatpakSpawnFlag#EMPTY_APP}.
+     *
+     * @param fd an fd opened with O_PATH on the directory
+     * @return this
+     */
+    public SpawnFds appFd(FileDescriptor fd) {
+        this.appFd = fd;
+        return this;
+    }
+
+    /**
+     * Option "usr-fd": a directory to be mounted at /usr instead of the runtime.
+     *
+     * @param fd an fd opened with O_PATH on the directory
+     * @return this
+     */
+    public SpawnFds usrFd(FileDescriptor fd) {
+        this.usrFd = fd;
+        return this;
+    }
+
+    /**
+     * Option "sandbox-expose-fd": a file or directory to expose read-write to a process started with
+     * {@link FlatpakSpawnFlag#SANDBOX}.
+     *
+     * @param fd an fd opened with O_PATH on the file or directory
+     * @return this
+     */
+    public SpawnFds exposeFd(FileDescriptor fd) {
+        exposed.add(fd);
+        return this;
+    }
+
+    /**
+     * Option "sandbox-expose-fd-ro": a file or directory to expose read-only to a process started with
+     * {@link FlatpakSpawnFlag#SANDBOX}.
+     *
+     * @param fd an fd opened with O_PATH on the file or directory
+     * @return this
+     */
+    public SpawnFds exposeFdReadOnly(FileDescriptor fd) {
+        exposedReadOnly.add(fd);
+        return this;
+    }
+
+    /**
+     * @return the fds argument of {@link UpdatePortal#Spawn}
+     */
+    public Map<UInt32, FileDescriptor> fds() {
+        return Map.copyOf(fds);
+    }
+
+    /**
+     * Adds the fd related spawn options to {@code options}.
+     *
+     * @param options further spawn options, not modified
+     * @return a new map with {@code options} and the fd related spawn options
+     */
+    public Map<String, Variant<?>> options(Map<String, Variant<?>> options) {
+        Map<String, Variant<?>> merged = new LinkedHashMap<>(options);
+        if (null != appFd) merged.put("app-fd", new Variant<>(appFd));
+        if (null != usrFd) merged.put("usr-fd", new Variant<>(usrFd));
+        if (!exposed.isEmpty()) merged.put("sandbox-expose-fd", new Variant<>(List.copyOf(exposed), "ah"));
+        if (!exposedReadOnly.isEmpty()) merged.put("sandbox-expose-fd-ro", new Variant<>(List.copyOf(exposedReadOnly), "ah"));
+        return merged;
+    }
+
+    /**
+     * Closes the fds passed with {@link #handOver}. Call this once the new instance has been spawned,
+     * it holds its own copies then.
+     */
+    @Override
+    public void close() {
+        for (FileDescriptor fd : owned) {
+            try {
+                FileDescriptors.close(fd);
+            } catch (IOException e) {
+                LOG.error(e.toString(), e.getCause());
+            }
+        }
+        owned.clear();
+    }
+}
@@ -0,0 +1,324 @@
+package org.purejava.portal;
+
+import org.freedesktop.dbus.FileDescriptor;
+import org.freedesktop.dbus.types.UInt32;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Restarts the application with {@link FlatpakSpawnFlag#LATEST_VERSION} and streams a snapshot of its state to
+ * the new instance, so that it doesn't need to rebuild it from scratch.
+ * <p>
+ * The snapshot is written to a pipe inherited by the new instance as fd {@value #HANDOFF_FD}, split into frames of
+ * at most {@value #CHUNK_SIZE} bytes, each prefixed with its length as a 4 byte big-endian int. A frame of length 0
+ * ends the snapshot. The new instance finds the fd number in the environment variable {@value #FD_ENV} and reads
+ * the snapshot with {@link #receive()}.
+ * <p>
+ * A handoff that doesn't complete within its deadline, e.g. because the new instance doesn't read the snapshot,
+ * fails; like cancelling the returned future, this closes the pipe and releases the thread writing the snapshot.
+ */
+public class StateHandoff {
+
+    public static final String FD_ENV = "FLATPAK_STATE_HANDOFF_FD";
+    public static final int HANDOFF_FD = 3;
+    static final int CHUNK_SIZE = 64 * 1024;
+    static final Duration DEFAULT_TIMEOUT = Duration.ofSeconds(30);
+
+    private static final Logger LOG = LoggerFactory.getLogger(StateHandoff.class);
+
+    private final UpdatePortal portal;
+
+    /**
+     * Writes a snapshot of the application state.
+     */
+    @FunctionalInterface
+    public interface Snapshot {
+        void writeTo(OutputStream out) throws IOException;
+    }
+
+    public StateHandoff(UpdatePortal portal) {
+        this.portal = portal;
+    }
+
+    /**
+     * Spawns the latest version of the application and hands the snapshot over to it, within 30 seconds.
+     * See {@link #restart(List, List, Map, Snapshot, Duration)}.
+     */
+    public CompletableFuture<UInt32> restart(List<Byte> cwdPath, List<List<Byte>> argv, Map<String, String> envs, Snapshot snapshot) {
+        return restart(cwdPath, argv, envs, snapshot, DEFAULT_TIMEOUT);
+    }
+
+    /**
+     * Spawns the latest version of the application and hands the snapshot over to it.
+     * The current instance should keep serving until the returned future completes.
+     *
+     * @param cwdPath  the working directory for the new process
+     * @param argv     the argv for the new process, starting with the executable to launch
+     * @param envs     variable/value pairs for the environment of the new process
+     * @param snapshot writes the state to hand over
+     * @param timeout  the deadline for the new instance to start and read the whole snapshot
+     * @return a future completing with the PID of the new process once it has started and received the whole
+     * snapshot; it completes exceptionally if spawning or the transfer fails, if the new process exits early or
+     * if the deadline passes. Cancelling it aborts the transfer.
+     */
+    public CompletableFuture<UInt32> restart(List<Byte> cwdPath, List<List<Byte>> argv, Map<String, String> envs, Snapshot snapshot, Duration timeout) {
+        var result = new CompletableFuture<UInt32>();
+        if (null == snapshot || null == timeout) {
+            result.completeExceptionally(new IllegalArgumentException("Cannot hand over state as required snapshot or timeout is missing"));
+            return result;
+        }
+
+        FileDescriptors.Pair pipe;
+        try {
+            pipe = FileDescriptors.pipe();
+        } catch (IOException e) {
+            result.completeExceptionally(e);
+            return result;
+        }
+
+        // open the write end while the read end is still open here, opening a pipe without reader would block
+        FileChannel channel;
+        try {
+            channel = FileDescriptors.open(pipe.second(), StandardOpenOption.WRITE);
+        } catch (IOException e) {
+            closeQuietly(pipe.first());
+            result.completeExceptionally(e);
+            return result;
+        } finally {
+            // the channel holds its own descriptor
+            closeQuietly(pipe.second());
+        }
+        // a writer blocked on a full pipe fails once the channel is closed
+        result.orTimeout(timeout.toNanos(), TimeUnit.NANOSECONDS).whenComplete((_, t) -> {
+            if (null != t) closeQuietly(channel);
+        });
+
+        // signals may arrive before Spawn returns the pid
+        Set<Long> started = ConcurrentHashMap.newKeySet();
+        Set<Long> exited = ConcurrentHashMap.newKeySet();
+        var pid = new CompletableFuture<UInt32>();
+        var startedReady = new CompletableFuture<UInt32>();
+        var onStarted = portal.onSpawnStarted(signal -> {
+            started.add(signal.pid.longValue());
+            pid.thenAccept(p -> {
+                if (p.longValue() == signal.pid.longValue()) startedReady.complete(p);
+            });
+        });
+        var onExited = portal.onSpawnExited(signal -> {
+            exited.add(signal.pid.longValue());
+            pid.thenAccept(p -> {
+                if (p.longValue() == signal.pid.longValue()) {
+                    result.completeExceptionally(new IOException("New instance exited with status " + signal.exitStatus + " before taking over"));
+                }
+            });
+        });
+        result.whenComplete((_, _) -> unsubscribe(onStarted, onExited));
+
+        var environment = new HashMap<>(null == envs ? Map.<String, String>of() : envs);
+        environment.put(FD_ENV, String.valueOf(HANDOFF_FD));
+        var flags = new UInt32(FlatpakSpawnFlag.LATEST_VERSION.getValue() | FlatpakSpawnFlag.NOTIFY_START.getValue());
+
+        UInt32 spawned;
+        try (var fds = new SpawnFds().handOver(HANDOFF_FD, pipe.first())) {
+            spawned = portal.spawnWithOptions(cwdPath, argv, fds, environment, flags, PortalOptions.EMPTY);
+        } catch (RuntimeException e) {
+            spawned = null;
+            LOG.error(e.toString(), e.getCause());
+        }
+        if (null == spawned) {
+            closeQuietly(channel);
+            result.completeExceptionally(new IOException("Cannot hand over state as the new instance could not be spawned"));
+            return result;
+        }
+        pid.complete(spawned);
+        if (started.contains(spawned.longValue())) startedReady.complete(spawned);
+        if (exited.contains(spawned.longValue())) {
+            result.completeExceptionally(new IOException("New instance exited before taking over"));
+        }
+
+        var transfer = CompletableFuture.runAsync(() -> {
+            try (var out = new FrameOutputStream(Channels.newOutputStream(channel))) {
+                snapshot.writeTo(out);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }, r -> Thread.ofVirtual().name("flatpak-state-handoff").start(r));
+
+        transfer.thenCombine(startedReady, (_, p) -> p).whenComplete((p, t) -> {
+            if (null == t) {
+                result.complete(p);
+            } else {
+                result.completeExceptionally(t);
+            }
+        });
+        return result;
+    }
+
+    /**
+     * Tells whether this instance was started by {@link #restart} and has a snapshot to read.
+     *
+     * @return true if a snapshot was handed over
+     */
+    public static boolean isHandedOver() {
+        return null != System.getenv(FD_ENV);
+    }
+
+    /**
+     * Reads the snapshot handed over by the previous instance. The stream ends where the snapshot ends.
+     *
+     * @return the snapshot, the caller has to close it
+     * @throws IOException if no snapshot was handed over or it cannot be read
+     */
+    public static InputStream receive() throws IOException {
+        var fd = System.getenv(FD_ENV);
+        if (Util.varIsEmpty(fd)) throw new IOException("No state was handed over, " + FD_ENV + " is not set");
+        try {
+            var inherited = new FileDescriptor(Integer.parseInt(fd.strip()));
+            var channel = FileDescriptors.open(inherited, StandardOpenOption.READ);
+            // the channel holds its own descriptor, the inherited one would stay open for the lifetime of the process
+            closeQuietly(inherited);
+            return new FrameInputStream(Channels.newInputStream(channel));
+        } catch (NumberFormatException e) {
+            throw new IOException("No state was handed over, " + FD_ENV + " is not a file descriptor: " + fd);
+        }
+    }
+
+    private static void unsubscribe(AutoCloseable... handlers) {
+        for (AutoCloseable handler : handlers) {
+            if (null == handler) continue;
+            try {
+                handler.close();
+            } catch (Exception e) {
+                LOG.error(e.toString(), e.getCause());
+            }
+        }
+    }
+
+    private static void closeQuietly(FileChannel channel) {
+        try {
+            channel.close();
+        } catch (IOException e) {
+            LOG.debug(e.toString());
+        }
+    }
+
+    private static void closeQuietly(FileDescriptor fd) {
+        try {
+            FileDescriptors.close(fd);
+        } catch (IOException e) {
+            LOG.debug(e.toString());
+        }
+    }
+
+    static final class FrameOutputStream extends OutputStream {
+        private final DataOutputStream out;
+        private final byte[] buffer = new byte[CHUNK_SIZE];
+        private int count;
+
+        FrameOutputStream(OutputStream out) {
+            this.out = new DataOutputStream(out);
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            if (count == buffer.length) writeFrame();
+            buffer[count++] = (byte) b;
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            while (len > 0) {
+                if (count == buffer.length) writeFrame();
+                var n = Math.min(len, buffer.length - count);
+                System.arraycopy(b, off, buffer, count, n);
+                count += n;
+                off += n;
+                len -= n;
+            }
+        }
+
+        @Override
+        public void flush() throws IOException {
+            if (count > 0) writeFrame();
+            out.flush();
+        }
+
+        @Override
+        public void close() throws IOException {
+            try {
+                flush();
+                out.writeInt(0);
+                out.flush();
+            } finally {
+                out.close();
+            }
+        }
+
+        private void writeFrame() throws IOException {
+            out.writeInt(count);
+            out.write(buffer, 0, count);
+            count = 0;
+        }
+    }
+
+    static final class FrameInputStream extends InputStream {
+        private final DataInputStream in;
+        private int remaining;
+        private boolean ended;
+
+        FrameInputStream(InputStream in) {
+            this.in = new DataInputStream(in);
+        }
+
+        @Override
+        public int read() throws IOException {
+            if (!nextFrame()) return -1;
+            remaining--;
+            return in.readUnsignedByte();
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            if (len == 0) return 0;
+            if (!nextFrame()) return -1;
+            var n = in.read(b, off, Math.min(len, remaining));
+            if (n < 0) throw new EOFException("Snapshot ended in the middle of a frame");
+            remaining -= n;
+            return n;
+        }
+
+        @Override
+        public void close() throws IOException {
+            in.close();
+        }
+
+        private boolean nextFrame() throws IOException {
+            while (!ended && remaining == 0) {
+                var length = in.readInt();
+                if (length < 0) throw new IOException("Invalid frame length: " + length);
+                if (length == 0) ended = true;
+                remaining = length;
+            }
+            return !ended;
+        }
+    }
+}
@@ -0,0 +1,26 @@
+package org.purejava.portal;
+
+import java.time.Instant;
+
+/**
+ * An update that became known for an app.
+ *
+ * @param appId     the app the update is for
+ * @param version   the released version for {@link Source#FLATHUB}, the remote commit for {@link Source#PORTAL}
+ * @param source    where the update was learned from
+ * @param timestamp when the update was observed
+ */
+public record UpdateEvent(String appId, String version, Source source, Instant timestamp) {
+
+    public enum Source {
+        /**
+         * Result of an {@link org.purejava.portal.rest.UpdateCheckerTask} polling Flathub.
+         */
+        FLATHUB,
+
+        /**
+         * {@code UpdateAvailable} signal of a portal update monitor.
+         */
+        PORTAL
+    }
+}
@@ -0,0 +1,268 @@
+package org.purejava.portal;
+
+import org.purejava.portal.rest.UpdateCheckerTask;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.time.Instant;
+import java.util.EnumMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Flow;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.SubmissionPublisher;
+import java.util.function.Consumer;
+
+/**
+ * Merges Flathub polling results and portal {@code UpdateAvailable} signals into one stream of {@link UpdateEvent}s.
+ * <p>
+ * A version already published for an app and source is not published again. Events are buffered per subscriber
+ * and handed on by the executor, never by the callback or signal thread that produced them; for a subscriber that
+ * falls behind, whether it requests too little or takes long in {@code onNext}, a newer event for an app and source
+ * replaces the one still waiting, so it gets the latest version of every app, and the buffer stays bounded by the
+ * number of apps.
+ */
+public class UpdateEventPublisher implements Flow.Publisher<UpdateEvent>, AutoCloseable {
+
+    private static final Logger LOG = LoggerFactory.getLogger(UpdateEventPublisher.class);
+    private static final String REMOTE_COMMIT = "remote-commit";
+
+    private final Executor executor;
+    private final SubmissionPublisher<UpdateEvent> publisher;
+    private final Map<UpdateEvent.Source, Map<String, String>> published = new EnumMap<>(UpdateEvent.Source.class);
+    private final List<AutoCloseable> signalHandlers = new CopyOnWriteArrayList<>();
+
+    public UpdateEventPublisher() {
+        this(Flow.defaultBufferSize());
+    }
+
+    /**
+     * @param maxBufferCapacity the maximum number of events in flight to a subscriber before they are merged by app
+     */
+    public UpdateEventPublisher(int maxBufferCapacity) {
+        this(ForkJoinPool.commonPool(), maxBufferCapacity);
+    }
+
+    /**
+     * @param executor          runs the delivery to subscribers
+     * @param maxBufferCapacity the maximum number of events in flight to a subscriber before they are merged by app
+     */
+    public UpdateEventPublisher(Executor executor, int maxBufferCapacity) {
+        this.executor = executor;
+        this.publisher = new SubmissionPublisher<>(executor, maxBufferCapacity);
+        for (UpdateEvent.Source source : UpdateEvent.Source.values()) {
+            published.put(source, new ConcurrentHashMap<>());
+        }
+    }
+
+    @Override
+    public void subscribe(Flow.Subscriber<? super UpdateEvent> subscriber) {
+        publisher.subscribe(new Conflating(subscriber, executor));
+    }
+
+    /**
+     * Publishes the versions found by a task. A success callback already set on the task keeps being called.
+     *
+     * @param task the task to watch
+     */
+    public void watch(UpdateCheckerTask task) {
+        if (null == task) {
+            LOG.error("Cannot watch UpdateCheckerTask as none was provided");
+            return;
+        }
+        var appId = task.getAppId();
+        Consumer<String> publish = version -> publish(appId, version, UpdateEvent.Source.FLATHUB);
+        var onSucceeded = task.getOnSucceeded();
+        task.setOnSucceeded(null == onSucceeded ? publish : onSucceeded.andThen(publish));
+    }
+
+    /**
+     * Publishes the {@code UpdateAvailable} signals of an update monitor.
+     *
+     * @param portal      the portal the monitor was created on
+     * @param appId       the app the monitor belongs to
+     * @param monitorPath the object path returned by {@link UpdatePortal#CreateUpdateMonitor}
+     */
+    public void watch(UpdatePortal portal, String appId, String monitorPath) {
+        if (Util.varIsEmpty(appId) || Util.varIsEmpty(monitorPath)) {
+            LOG.error("Cannot watch UpdateMonitor as required appId or monitorPath is missing");
+            return;
+        }
+        if (null == portal) {
+            LOG.error("Cannot watch UpdateMonitor as required portal is missing");
+            return;
+        }
+        var handler = portal.onUpdateAvailable(monitorPath, signal -> {
+            var remoteCommit = signal.update_info.get(REMOTE_COMMIT);
+            if (null != remoteCommit) publish(appId, String.valueOf(remoteCommit.getValue()), UpdateEvent.Source.PORTAL);
+        });
+        if (null != handler) signalHandlers.add(handler);
+    }
+
+    void publish(String appId, String version, UpdateEvent.Source source) {
+        if (null == version || version.equals(published.get(source).put(appId, version))) return;
+
+        // blocks while the buffer is full; Conflating requests everything and only records each event, so the buffer
+        // empties as fast as events are recorded, however slow the subscribers are
+        publisher.submit(new UpdateEvent(appId, version, source, Instant.now()));
+    }
+
+    @Override
+    public void close() {
+        for (AutoCloseable handler : signalHandlers) {
+            try {
+                handler.close();
+            } catch (Exception e) {
+                LOG.error(e.toString(), e.getCause());
+            }
+        }
+        signalHandlers.clear();
+        publisher.close();
+    }
+
+    private record Key(UpdateEvent.Source source, String appId) {
+    }
+
+    /**
+     * Takes every event from the publisher and hands it on as the subscriber requests it, keeping only the latest
+     * waiting event per app and source. Delivery runs on the executor, so the publisher's thread never waits for the
+     * subscriber.
+     */
+    private static final class Conflating implements Flow.Subscriber<UpdateEvent>, Flow.Subscription {
+        private final Flow.Subscriber<? super UpdateEvent> downstream;
+        private final Executor executor;
+        private final Map<Key, UpdateEvent> pending = new LinkedHashMap<>();
+        private Flow.Subscription upstream;
+        private long demand;
+        private boolean draining;
+        private boolean done;
+        private boolean cancelled;
+        private Throwable error;
+
+        private Conflating(Flow.Subscriber<? super UpdateEvent> downstream, Executor executor) {
+            this.downstream = downstream;
+            this.executor = executor;
+        }
+
+        @Override
+        public void onSubscribe(Flow.Subscription subscription) {
+            // counts as draining, so that nothing is delivered before the subscriber's onSubscribe returns
+            synchronized (this) {
+                upstream = subscription;
+                draining = true;
+            }
+            downstream.onSubscribe(this);
+            subscription.request(Long.MAX_VALUE);
+            synchronized (this) {
+                draining = false;
+            }
+            schedule();
+        }
+
+        @Override
+        public void onNext(UpdateEvent event) {
+            synchronized (this) {
+                if (cancelled) return;
+                var key = new Key(event.source(), event.appId());
+                if (null != pending.remove(key)) LOG.debug("Subscriber {} is not keeping up, skipping to {}", downstream, event);
+                pending.put(key, event);
+            }
+            schedule();
+        }
+
+        @Override
+        public void onError(Throwable throwable) {
+            synchronized (this) {
+                error = throwable;
+                done = true;
+            }
+            schedule();
+        }
+
+        @Override
+        public void onComplete() {
+            synchronized (this) {
+                done = true;
+            }
+            schedule();
+        }
+
+        @Override
+        public void request(long n) {
+            Flow.Subscription invalid = null;
+            synchronized (this) {
+                if (n <= 0) {
+                    error = new IllegalArgumentException("non-positive subscription request: " + n);
+                    pending.clear();
+                    done = true;
+                    invalid = upstream;
+                } else {
+                    demand = demand + n < 0 ? Long.MAX_VALUE : demand + n;
+                }
+            }
+            if (null != invalid) invalid.cancel();
+            schedule();
+        }
+
+        @Override
+        public void cancel() {
+            Flow.Subscription subscription;
+            synchronized (this) {
+                cancelled = true;
+                pending.clear();
+                subscription = upstream;
+            }
+            if (null != subscription) subscription.cancel();
+        }
+
+        /**
+         * Starts delivery on the executor unless it is running already.
+         */
+        private void schedule() {
+            synchronized (this) {
+                if (draining) return;
+                draining = true;
+            }
+            executor.execute(this::drain);
+        }
+
+        /**
+         * Delivers on one thread at a time, outside the lock, so the subscriber may call back into request().
+         */
+        private void drain() {
+            while (true) {
+                UpdateEvent next = null;
+                Throwable failure;
+                synchronized (this) {
+                    failure = error;
+                    if (cancelled) {
+                        draining = false;
+                        return;
+                    }
+                    if (demand > 0 && !pending.isEmpty()) {
+                        var first = pending.entrySet().iterator();
+                        next = first.next().getValue();
+                        first.remove();
+                        demand--;
+                    } else if (!done || !pending.isEmpty() && null == failure) {
+                        draining = false;
+                        return;
+                    } else {
+                        cancelled = true;
+                    }
+                }
+                if (null != next) {
+                    downstream.onNext(next);
+                } else if (null != failure) {
+                    downstream.onError(failure);
+                } else {
+                    downstream.onComplete();
+                }
+            }
+        }
+    }
+}
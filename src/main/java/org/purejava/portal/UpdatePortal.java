@@ -9,59 +9,121 @@ import org.freedesktop.dbus.interfaces.DBus;
 import org.freedesktop.dbus.types.UInt32;
 import org.freedesktop.dbus.types.Variant;
 import org.purejava.portal.freedesktop.dbus.handlers.Messaging;
+import org.purejava.portal.freedesktop.dbus.handlers.SignalDispatcher;
 import org.purejava.portal.rest.UpdateCheckerTask;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Consumer;
 
 public class UpdatePortal extends Messaging implements Flatpak {
 
-    public static final Map<String, Variant<?>> OPTIONS_DUMMY = new HashMap<>();
+    /**
+     * Empty options, unmodifiable.
+     *
+     * @see PortalOptions#EMPTY
+     */
+    public static final Map<String, Variant<?>> OPTIONS_DUMMY = PortalOptions.EMPTY.asMap();
     private static final Logger LOG = LoggerFactory.getLogger(UpdatePortal.class);
     private static final String BUS_NAME = "org.freedesktop.portal.Flatpak";
     private static final String DBUS_PATH = "/org/freedesktop/portal/Flatpak";
     private static final String PORTAL_NOT_AVAILABLE = "Flatpak portal not available on DBus";
-    private static DBusConnection connection;
 
-    private Flatpak flatpak = null;
-    private UpdateCheckerTask task;
+    /**
+     * Properties of the Flatpak portal.
+     *
+     * @param version  version of the Flatpak portal
+     * @param supports indicator, what features are supported
+     */
+    public record Info(Long version, Long supports) {
+    }
 
-    static {
-        try {
-            connection = DBusConnectionBuilder.forSessionBus().withShared(false).build();
-            connection.getRemoteObject("org.freedesktop.DBus",
-                    "/org/freedesktop/DBus", DBus.class);
-        } catch (DBusException e) {
-            LOG.error(e.toString(), e.getCause());
+    private final SignalDispatcher signals;
+    private final PortalHealthMonitor health;
+    private volatile Flatpak flatpak = null;
+    private final Map<String, UpdateCheckerTask> tasks = new ConcurrentHashMap<>();
+
+    /**
+     * Holds the session bus connection and the dispatcher of its signals, which all {@link UpdatePortal}s share, so
+     * that a match rule is installed once per connection. The connection is established when the holder is first
+     * accessed, instead of when {@link UpdatePortal} is loaded.
+     */
+    private static final class Bus {
+        private static final DBusConnection CONNECTION;
+        private static final DBus DBUS;
+        private static final SignalDispatcher SIGNALS;
+
+        static {
+            DBusConnection connection = null;
+            DBus dbus = null;
+            try {
+                connection = DBusConnectionBuilder.forSessionBus().withShared(false).build();
+                dbus = connection.getRemoteObject("org.freedesktop.DBus",
+                        "/org/freedesktop/DBus", DBus.class);
+            } catch (DBusException e) {
+                LOG.error(e.toString(), e.getCause());
+            }
+            CONNECTION = connection;
+            DBUS = dbus;
+            SIGNALS = new SignalDispatcher(connection);
         }
     }
 
     public UpdatePortal() {
+        this(Bus.CONNECTION, Bus.DBUS, Bus.SIGNALS);
+    }
+
+    /**
+     * @param connection the connection to reach the portal on, null for a portal that is not available, e.g. in tests
+     * @param dbus       the bus daemon of {@code connection}
+     * @param signals    the dispatcher of {@code connection}
+     */
+    UpdatePortal(DBusConnection connection, DBus dbus, SignalDispatcher signals) {
         super(connection, BUS_NAME, DBUS_PATH, BUS_NAME);
+        this.signals = signals;
         if (null != connection) {
-            try {
-                this.flatpak = connection.getRemoteObject(BUS_NAME, DBUS_PATH, Flatpak.class);
-            } catch (DBusException e) {
-                LOG.error(e.toString(), e.getCause());
-            }
+            bind();
+            this.health = new PortalHealthMonitor(signals, dbus, BUS_NAME, this::bind);
         } else {
+            this.health = null;
             LOG.error("Dbus not available");
         }
     }
 
-    public boolean isAvailable() {
+    private void bind() {
         try {
-            connection.getRemoteObject(BUS_NAME, DBUS_PATH, Flatpak.class);
-            return true;
+            this.flatpak = getConnection().getRemoteObject(BUS_NAME, DBUS_PATH, Flatpak.class);
         } catch (DBusException e) {
             LOG.error(e.toString(), e.getCause());
-            return false;
         }
     }
 
+    /**
+     * Connects to the session bus in the background, so that constructing the first {@link UpdatePortal}
+     * later on doesn't block. Calling this is optional.
+     *
+     * @return a future that completes once the connection attempt is finished
+     */
+    public static CompletableFuture<Void> warmUp() {
+        return CompletableFuture.runAsync(() -> {
+            var _ = Bus.CONNECTION;
+        }, r -> Thread.ofVirtual().name("flatpak-portal-warm-up").start(r));
+    }
+
+    /**
+     * Tells whether the Flatpak portal is running or can be activated. The answer is kept up to date by watching the bus,
+     * so calling this is cheap while the portal is available; otherwise the bus is asked again.
+     *
+     * @return true if the portal is available
+     */
+    public boolean isAvailable() {
+        return null != health && health.isAvailable();
+    }
+
     private boolean isUsable() {
         return null != flatpak;
     }
@@ -121,6 +183,20 @@ public class UpdatePortal extends Messaging implements Flatpak {
         return null == s ? null : s.longValue();
     }
 
+    /**
+     * Reads the properties "version" and "supports" in one round trip.
+     *
+     * @return version and supported features of the Flatpak portal, or null if the portal is not available
+     */
+    public Info probe() {
+        if (!isUsable()) {
+            LOG.error(PORTAL_NOT_AVAILABLE);
+            return null;
+        }
+        var values = getProperties("version", "supports");
+        return new Info(longOrNull(values.get(0)), longOrNull(values.get(1)));
+    }
+
     /**
      * Creates an update monitor object that will emit signals when an update for the caller becomes available,
      * and can be used to install it.
@@ -132,23 +208,33 @@ public class UpdatePortal extends Messaging implements Flatpak {
     @Override
     public DBusPath CreateUpdateMonitor(Map<String, Variant<?>> options) {
         if (isUsable()) {
-            return flatpak.CreateUpdateMonitor(options);
+            return getMessageHandler().invoke(() -> flatpak.CreateUpdateMonitor(options));
         }
         LOG.error(PORTAL_NOT_AVAILABLE);
         return null;
     }
 
+    /**
+     * Creates an update monitor object, see {@link #CreateUpdateMonitor(Map)}.
+     *
+     * @param options Options for the monitor, {@link PortalOptions#EMPTY} as no options are defined yet.
+     * @return Object path for the org.freedesktop.portal.Flatpak.UpdateMonitor object.
+     */
+    public DBusPath createUpdateMonitorWithOptions(PortalOptions options) {
+        return CreateUpdateMonitor(null == options ? OPTIONS_DUMMY : options.asMap());
+    }
+
     public UpdateMonitor getUpdateMonitor(String dbusPath) {
         if (Util.varIsEmpty(dbusPath)) {
             LOG.error("Cannot retrieve UpdateMonitor as required DBusPath is missing");
             return null;
         }
-        if (null == connection) {
+        if (null == getConnection()) {
             LOG.error("Cannot retrieve UpdateMonitor as required DBus connection is missing");
             return null;
         }
         try {
-            return connection.getRemoteObject(BUS_NAME, dbusPath, UpdateMonitor.class);
+            return getConnection().getRemoteObject(BUS_NAME, dbusPath, UpdateMonitor.class);
         } catch (DBusException e) {
             LOG.error(e.toString(), e.getCause());
             return null;
@@ -165,7 +251,10 @@ public class UpdatePortal extends Messaging implements Flatpak {
             LOG.error("Cannot cancel UpdateMonitor as none was provided");
             return;
         }
-        monitor.Close();
+        getMessageHandler().invoke(() -> {
+            monitor.Close();
+            return null;
+        });
     }
 
     /**
@@ -188,7 +277,21 @@ public class UpdatePortal extends Messaging implements Flatpak {
             LOG.error("Cannot update Application as required options are missing");
             return;
         }
-        monitor.Update(parentWindow, options);
+        getMessageHandler().invoke(() -> {
+            monitor.Update(parentWindow, options);
+            return null;
+        });
+    }
+
+    /**
+     * Asks to install an update of the calling app.
+     *
+     * @param parentWindow The window identifier for dialogs.
+     * @param monitor      The UpdateMonitor to trigger the update.
+     * @param options      Update-related options, {@link PortalOptions#EMPTY} as no options are defined yet.
+     */
+    public void updateAppWithOptions(String parentWindow, UpdateMonitor monitor, PortalOptions options) {
+        updateApp(parentWindow, monitor, null == options ? null : options.asMap());
     }
 
     /**
@@ -224,19 +327,122 @@ public class UpdatePortal extends Messaging implements Flatpak {
             LOG.error("Cannot start a new instance of the application as required options are missing");
             return null;
         }
-        return flatpak.Spawn(cwdPath, argv, fds, envs, flags, options);
+        return getMessageHandler().invoke(() -> flatpak.Spawn(cwdPath, argv, fds, envs, flags, options));
+    }
+
+    /**
+     * Starts a new instance of the application and hands it the file descriptors collected in {@code fds}.
+     *
+     * @param cwdPath the working directory for the new process
+     * @param argv    the argv for the new process, starting with the executable to launch
+     * @param fds     the file descriptors and fd related options for the new process
+     * @param envs    an array of variable/value pairs for the environment of the new process
+     * @param flags   flags, see <a href="https://docs.flatpak.org/en/latest/portal-api-reference.html#gdbus-org.freedesktop.portal.Flatpak">flags</a>
+     * @param options Vardict with optional further information
+     * @return the PID of the new process
+     * @see #Spawn
+     */
+    public UInt32 spawn(List<Byte> cwdPath, List<List<Byte>> argv, SpawnFds fds, Map<String, String> envs, UInt32 flags, Map<String, Variant<?>> options) {
+        if (null == fds) {
+            LOG.error("Cannot start a new instance of the application as required fds are missing");
+            return null;
+        }
+        if (null == options) {
+            LOG.error("Cannot start a new instance of the application as required options are missing");
+            return null;
+        }
+        return Spawn(cwdPath, argv, fds.fds(), envs, flags, fds.options(options));
+    }
+
+    /**
+     * Starts a new instance of the application.
+     *
+     * @param cwdPath the working directory for the new process
+     * @param argv    the argv for the new process, starting with the executable to launch
+     * @param fds     the file descriptors and fd related options for the new process
+     * @param envs    an array of variable/value pairs for the environment of the new process
+     * @param flags   flags, see <a href="https://docs.flatpak.org/en/latest/portal-api-reference.html#gdbus-org.freedesktop.portal.Flatpak">flags</a>
+     * @param options options built with {@link PortalOptions#spawn()}
+     * @return the PID of the new process
+     * @see #Spawn
+     */
+    public UInt32 spawnWithOptions(List<Byte> cwdPath, List<List<Byte>> argv, SpawnFds fds, Map<String, String> envs, UInt32 flags, PortalOptions options) {
+        return spawn(cwdPath, argv, fds, envs, flags, null == options ? null : options.asMap());
     }
 
     @Override
     public void SpawnSignal(UInt32 pid, UInt32 signal, boolean toProcessGroup) {
         if (isUsable()) {
-            flatpak.SpawnSignal(pid, signal, toProcessGroup);
+            getMessageHandler().invoke(() -> {
+                flatpak.SpawnSignal(pid, signal, toProcessGroup);
+                return null;
+            });
         }
         LOG.error(PORTAL_NOT_AVAILABLE);
     }
 
+    /**
+     * Subscribes to SpawnStarted signals, emitted for processes spawned with {@link FlatpakSpawnFlag#NOTIFY_START}.
+     *
+     * @param listener called for every signal
+     * @return handle to unsubscribe with, or null if subscribing failed
+     */
+    public AutoCloseable onSpawnStarted(Consumer<SpawnStarted> listener) {
+        return signals.subscribe(SpawnStarted.class, DBUS_PATH, listener);
+    }
+
+    /**
+     * Subscribes to SpawnExited signals.
+     *
+     * @param listener called for every signal
+     * @return handle to unsubscribe with, or null if subscribing failed
+     */
+    public AutoCloseable onSpawnExited(Consumer<SpawnExited> listener) {
+        return signals.subscribe(SpawnExited.class, DBUS_PATH, listener);
+    }
+
+    /**
+     * Subscribes to UpdateAvailable signals of an update monitor.
+     *
+     * @param monitorPath the object path returned by {@link #CreateUpdateMonitor}
+     * @param listener    called for every signal
+     * @return handle to unsubscribe with, or null if subscribing failed
+     */
+    public AutoCloseable onUpdateAvailable(String monitorPath, Consumer<UpdateMonitor.UpdateAvailable> listener) {
+        if (Util.varIsEmpty(monitorPath)) {
+            LOG.error("Cannot subscribe to UpdateAvailable as required monitorPath is missing");
+            return null;
+        }
+        return signals.subscribe(UpdateMonitor.UpdateAvailable.class, monitorPath, listener);
+    }
+
+    /**
+     * Subscribes to Progress signals of an update monitor.
+     *
+     * @param monitorPath the object path returned by {@link #CreateUpdateMonitor}
+     * @param listener    called for every signal
+     * @return handle to unsubscribe with, or null if subscribing failed
+     */
+    public AutoCloseable onProgress(String monitorPath, Consumer<UpdateMonitor.Progress> listener) {
+        if (Util.varIsEmpty(monitorPath)) {
+            LOG.error("Cannot subscribe to Progress as required monitorPath is missing");
+            return null;
+        }
+        return signals.subscribe(UpdateMonitor.Progress.class, monitorPath, listener);
+    }
+
+    public SignalDispatcher getSignalDispatcher() {
+        return signals;
+    }
+
     public void setUpdateCheckerTaskFor(String appName) {
-        task = new UpdateCheckerTask(appName);
+        if (Util.varIsEmpty(appName)) {
+            LOG.error("Cannot set UpdateCheckerTask as required appName is missing'");
+            return;
+        }
+        var previous = tasks.put(appName, new UpdateCheckerTask(appName));
+        // the replaced task can't be reached from close() anymore
+        if (null != previous) previous.cancel();
     }
 
     public String getAppId(String appName) {
@@ -244,7 +450,8 @@ public class UpdatePortal extends Messaging implements Flatpak {
             LOG.error("Cannot get appName of task as required appName is missing'");
             return null;
         }
-        return task.getAppId();
+        var task = tasks.get(appName);
+        return null == task ? null : task.getAppId();
     }
 
     public boolean isAppId(String appName) {
@@ -260,11 +467,12 @@ public class UpdatePortal extends Messaging implements Flatpak {
             LOG.error("Cannot lookup UpdateCheckerTask as required appName is missing'");
             return null;
         }
-        if (null == task) {
+        if (tasks.isEmpty()) {
             LOG.error("Cannot lookup UpdateCheckerTask as task wasn't set before, use 'setUpdateCheckerTaskFor'");
             return null;
         }
-        if (isAppId(appName)) {
+        var task = tasks.get(appName);
+        if (null != task) {
             return task;
         } else {
             LOG.error("No UpdateCheckerTask found for appName: {}", appName);
@@ -283,17 +491,25 @@ public class UpdatePortal extends Messaging implements Flatpak {
     }
 
     public DBusConnection getDBusConnection() {
-        return connection;
+        return getConnection();
     }
 
     public void close() {
+        if (null != health) health.close();
+        tasks.values().forEach(UpdateCheckerTask::cancel);
+        getMessageHandler().cancelPending();
         try {
+            var connection = getConnection();
             if (null != connection && connection.isConnected()) connection.disconnect();
         } catch (Exception e) {
             LOG.error(e.toString(), e.getCause());
         }
     }
 
+    private Long longOrNull(Variant<?> v) {
+        return null == v ? null : ((UInt32) v.getValue()).longValue();
+    }
+
     @SuppressWarnings("unchecked")
     private List<String> contentOrEmptyList(Object[] o) {
         return null == o ? List.of() : (List<String>) o[0];
@@ -0,0 +1,209 @@
+package org.purejava.portal;
+
+import org.freedesktop.dbus.types.Variant;
+import org.purejava.portal.Flatpak.UpdateMonitor;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayDeque;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Consumer;
+
+/**
+ * Measures how long updates installed through the portal take.
+ * <p>
+ * Start updates with {@link #update} instead of {@link UpdatePortal#updateAppWithOptions}: the tracker notes the
+ * time of the {@code Update} call and times every {@code Progress} signal of the monitor relative to it. From the
+ * signals it derives
+ * <ul>
+ *     <li>{@link #getUpdateDurations()}: from the {@code Update} call to the final status of a successful update,</li>
+ *     <li>{@link #getOpDurations()}: from the start to the end of each operation of an update,</li>
+ *     <li>{@link #getTimePerPercent()}: the time each operation took per percent of progress.</li>
+ * </ul>
+ * The portal reports the progress of the current operation in percent only, not in bytes, so the download rate
+ * is measured as time per percent. The last signals are kept as {@link ProgressEvent}s and can be replayed, e.g. to
+ * compare a run against the portal with one against a local stand-in.
+ */
+public class UpdateProgressTracker implements AutoCloseable {
+
+    private static final Logger LOG = LoggerFactory.getLogger(UpdateProgressTracker.class);
+    private static final int DEFAULT_LOG_CAPACITY = 4096;
+
+    private final UpdatePortal portal;
+    private final int logCapacity;
+    private final ArrayDeque<ProgressEvent> log = new ArrayDeque<>();
+    private final Map<String, Run> runs = new ConcurrentHashMap<>();
+    private final Map<String, AutoCloseable> signalHandlers = new ConcurrentHashMap<>();
+    private final LatencyHistogram updateDurations = new LatencyHistogram();
+    private final LatencyHistogram opDurations = new LatencyHistogram();
+    private final LatencyHistogram timePerPercent = new LatencyHistogram();
+
+    public UpdateProgressTracker(UpdatePortal portal) {
+        this(portal, DEFAULT_LOG_CAPACITY);
+    }
+
+    /**
+     * @param portal      the portal the update monitors were created on
+     * @param logCapacity the number of events kept for {@link #replay}; older events are dropped
+     */
+    public UpdateProgressTracker(UpdatePortal portal, int logCapacity) {
+        if (logCapacity < 1) throw new IllegalArgumentException("logCapacity must be positive");
+        this.portal = portal;
+        this.logCapacity = logCapacity;
+    }
+
+    /**
+     * Asks to install an update of the calling app and times it, see {@link UpdatePortal#updateAppWithOptions}.
+     *
+     * @param parentWindow The window identifier for dialogs.
+     * @param monitor      The UpdateMonitor to trigger the update.
+     * @param options      Update-related options, {@link PortalOptions#EMPTY} as no options are defined yet.
+     */
+    public void update(String parentWindow, UpdateMonitor monitor, PortalOptions options) {
+        // checked here, so that no run is started for an Update that updateAppWithOptions() would not issue
+        if (Util.varIsEmpty(parentWindow) || null == monitor || null == options) {
+            LOG.error("Cannot track update as required parentWindow, UpdateMonitor or options are missing");
+            return;
+        }
+        var monitorPath = monitor.getObjectPath();
+        signalHandlers.computeIfAbsent(monitorPath, path -> portal.onProgress(path, this::onProgress));
+        var run = new Run(System.nanoTime());
+        runs.put(monitorPath, run);
+        try {
+            portal.updateAppWithOptions(parentWindow, monitor, options);
+        } catch (RuntimeException e) {
+            runs.remove(monitorPath, run);
+            throw e;
+        }
+    }
+
+    public LatencyHistogram getUpdateDurations() {
+        return updateDurations;
+    }
+
+    public LatencyHistogram getOpDurations() {
+        return opDurations;
+    }
+
+    public LatencyHistogram getTimePerPercent() {
+        return timePerPercent;
+    }
+
+    /**
+     * @return the kept events, oldest first
+     */
+    public List<ProgressEvent> getEvents() {
+        synchronized (log) {
+            return List.copyOf(log);
+        }
+    }
+
+    /**
+     * Passes the kept events to {@code consumer}, oldest first. Events recorded meanwhile are not replayed.
+     *
+     * @param consumer called for every event
+     */
+    public void replay(Consumer<? super ProgressEvent> consumer) {
+        getEvents().forEach(consumer);
+    }
+
+    /**
+     * Stops listening to the monitors. The histograms and events are kept.
+     */
+    @Override
+    public void close() {
+        signalHandlers.values().forEach(handler -> {
+            try {
+                handler.close();
+            } catch (Exception e) {
+                LOG.error(e.toString(), e.getCause());
+            }
+        });
+        signalHandlers.clear();
+        runs.clear();
+    }
+
+    void started(String monitorPath, long nanos) {
+        runs.put(monitorPath, new Run(nanos));
+    }
+
+    private void onProgress(UpdateMonitor.Progress signal) {
+        record(signal.getPath(), signal.info, System.nanoTime());
+    }
+
+    /**
+     * Records a {@code Progress} signal received at {@code nanos}, as returned by {@link System#nanoTime()}.
+     */
+    ProgressEvent record(String monitorPath, Map<String, Variant<?>> info, long nanos) {
+        var run = runs.get(monitorPath);
+        if (null == run) {
+            LOG.debug("Ignoring progress of {} as no update was started through the tracker", monitorPath);
+            return null;
+        }
+        var event = new ProgressEvent(monitorPath, Instant.now(), Duration.ofNanos(nanos - run.startNanos),
+                intValue(info, "n_ops"), intValue(info, "op"), intValue(info, "progress"),
+                ProgressEvent.Status.of(intValue(info, "status")), stringValue(info, "error"), stringValue(info, "error_message"));
+        run.advance(event, nanos);
+        if (event.status().isFinal()) runs.remove(monitorPath, run);
+        synchronized (log) {
+            if (log.size() == logCapacity) log.removeFirst();
+            log.addLast(event);
+        }
+        return event;
+    }
+
+    private static int intValue(Map<String, Variant<?>> info, String key) {
+        var variant = null == info ? null : info.get(key);
+        return null != variant && variant.getValue() instanceof Number n ? n.intValue() : -1;
+    }
+
+    private static String stringValue(Map<String, Variant<?>> info, String key) {
+        var variant = null == info ? null : info.get(key);
+        return null != variant && variant.getValue() instanceof String s ? s : null;
+    }
+
+    /**
+     * One update. The first operation starts with the {@code Update} call, every further one when a signal
+     * names it first.
+     */
+    private final class Run {
+        private final long startNanos;
+        private int op;
+        private long opStartNanos;
+        private long lastNanos;
+        private int lastProgress;
+
+        private Run(long startNanos) {
+            this.startNanos = startNanos;
+            this.opStartNanos = startNanos;
+            this.lastNanos = startNanos;
+        }
+
+        private synchronized void advance(ProgressEvent event, long nanos) {
+            if (event.op() > op) {
+                finishOp();
+                op = event.op();
+                opStartNanos = lastNanos;
+                lastProgress = 0;
+            }
+            if (event.progress() >= 0) lastProgress = event.progress();
+            lastNanos = nanos;
+
+            if (event.status() == ProgressEvent.Status.DONE) {
+                finishOp();
+                updateDurations.recordNanos(nanos - startNanos);
+            }
+        }
+
+        private void finishOp() {
+            var duration = lastNanos - opStartNanos;
+            if (duration <= 0) return;
+            opDurations.recordNanos(duration);
+            if (lastProgress > 0) timePerPercent.recordNanos(duration / lastProgress);
+        }
+    }
+}
@@ -0,0 +1,240 @@
+package org.purejava.portal.cli;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.freedesktop.dbus.connections.impl.DBusConnection;
+import org.freedesktop.dbus.connections.impl.DBusConnectionBuilder;
+import org.freedesktop.dbus.exceptions.DBusException;
+import org.purejava.portal.rest.UpdateCheckerTask;
+import org.purejava.portal.rest.UpdateSweep;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Checks apps for updates on Flathub from the command line.
+ * <pre>
+ * java -p &lt;module path&gt; -m org.purejava.portal/org.purejava.portal.cli.UpdateCheckCli [options] [appId...]
+ *
+ *   --daemon             keep running, recheck periodically and export the results on the session bus
+ *   --interval SECONDS   time between checks in daemon mode, defaults to 3600
+ *   --parallel N         maximum number of requests to Flathub in flight, defaults to 8
+ * </pre>
+ * Without app ids on the command line, they are read from stdin, one per line; empty lines and lines starting
+ * with {@code #} are ignored. Every result is printed to stdout as one line of JSON as soon as it is known,
+ * e.g. {@code {"appId":"org.gimp.GIMP","version":"3.0.4"}} or {@code {"appId":"org.example.App","error":"..."}}.
+ * In daemon mode, the results are available from {@link UpdateCheckerService}, so local processes can share one
+ * poller.
+ */
+public class UpdateCheckCli {
+
+    private static final Logger LOG = LoggerFactory.getLogger(UpdateCheckCli.class);
+    private static final ObjectMapper JSON = new ObjectMapper();
+    private static final Duration SHUTDOWN_TIMEOUT = Duration.ofSeconds(10);
+
+    private final PrintStream out;
+
+    UpdateCheckCli(PrintStream out) {
+        this.out = out;
+    }
+
+    public static void main(String[] args) throws Exception {
+        Options options = null;
+        try {
+            options = Options.parse(args);
+        } catch (IllegalArgumentException e) {
+            usage(e.getMessage());
+        }
+        var appIds = options.appIds();
+        if (appIds.isEmpty()) appIds.addAll(readAppIds());
+        if (appIds.isEmpty()) usage("No app ids given");
+
+        var cli = new UpdateCheckCli(System.out);
+        if (options.daemon()) {
+            cli.serve(appIds, options.parallel(), options.interval());
+        } else {
+            System.exit(cli.check(appIds, options.parallel()) ? 0 : 1);
+        }
+    }
+
+    /**
+     * The command line.
+     *
+     * @param appIds the app ids given, empty if they are to be read from stdin
+     */
+    record Options(boolean daemon, Duration interval, int parallel, Set<String> appIds) {
+
+        /**
+         * @throws IllegalArgumentException if an option is unknown, lacks its value or has an invalid one
+         */
+        static Options parse(String[] args) {
+            boolean daemon = false;
+            Duration interval = Duration.ofHours(1);
+            int parallel = 8;
+            Set<String> appIds = new LinkedHashSet<>();
+
+            for (int i = 0; i < args.length; i++) {
+                switch (args[i]) {
+                    case "--daemon" -> daemon = true;
+                    case "--interval" -> interval = Duration.ofSeconds(number(args, ++i, "--interval"));
+                    case "--parallel" -> parallel = (int) Math.min(Integer.MAX_VALUE, number(args, ++i, "--parallel"));
+                    default -> {
+                        if (args[i].startsWith("--")) throw new IllegalArgumentException("Unknown option: " + args[i]);
+                        appIds.add(args[i]);
+                    }
+                }
+            }
+            if (interval.toSeconds() < 1) throw new IllegalArgumentException("--interval must be at least 1 second");
+            if (parallel < 1) throw new IllegalArgumentException("--parallel must be at least 1");
+            return new Options(daemon, interval, parallel, appIds);
+        }
+    }
+
+    /**
+     * Checks all apps once.
+     *
+     * @return true if every check succeeded
+     */
+    boolean check(Set<String> appIds, int parallel) {
+        var succeeded = new AtomicBoolean(true);
+        var sweep = sweep(appIds, parallel, (appId, version) -> {
+        }, (appId, error) -> succeeded.set(false));
+        sweep.start().join();
+        return succeeded.get();
+    }
+
+    /**
+     * Rechecks all apps every {@code interval} and exports the results on the session bus, until the JVM is stopped.
+     */
+    void serve(Set<String> appIds, int parallel, Duration interval) throws DBusException, InterruptedException {
+        var stopped = new CountDownLatch(1);
+        var cleanedUp = new CountDownLatch(1);
+        // the JVM halts once the hooks are done, so the hook waits for the cleanup below
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+            stopped.countDown();
+            try {
+                if (!cleanedUp.await(SHUTDOWN_TIMEOUT.toSeconds(), TimeUnit.SECONDS)) {
+                    LOG.warn("Stopping without disconnecting from the session bus as cleaning up takes too long");
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }));
+
+        try {
+            DBusConnection connection = DBusConnectionBuilder.forSessionBus().withShared(false).build();
+            try {
+                var service = new UpdateCheckerDaemon(connection::sendMessage);
+                // export first, clients may call as soon as the name appears
+                connection.exportObject(UpdateCheckerService.OBJECT_PATH, service);
+                connection.requestBusName(UpdateCheckerService.BUS_NAME);
+
+                var sweep = sweep(appIds, parallel, service::update, (appId, error) -> {
+                });
+                try (var scheduler = Executors.newSingleThreadScheduledExecutor()) {
+                    scheduler.scheduleWithFixedDelay(() -> recheck(sweep), 0, interval.toSeconds(), TimeUnit.SECONDS);
+                    stopped.await();
+                    sweep.cancel();
+                    scheduler.shutdownNow();
+                }
+            } finally {
+                if (connection.isConnected()) connection.disconnect();
+            }
+        } finally {
+            cleanedUp.countDown();
+        }
+    }
+
+    /**
+     * Runs one sweep. Failures are logged, as an exception escaping a periodic task would cancel all later runs.
+     */
+    static void recheck(UpdateSweep sweep) {
+        try {
+            sweep.start().join();
+        } catch (CancellationException e) {
+            LOG.debug("Update check cancelled");
+        } catch (RuntimeException e) {
+            LOG.error("Update check failed, retrying with the next one", e);
+        }
+    }
+
+    private UpdateSweep sweep(Set<String> appIds, int parallel, ResultListener<String> onVersion, ResultListener<Throwable> onError) {
+        List<UpdateCheckerTask> tasks = new ArrayList<>();
+        for (String appId : appIds) {
+            var task = new UpdateCheckerTask(appId);
+            task.setOnSucceeded(version -> {
+                print(appId, "version", version);
+                onVersion.accept(appId, version);
+            });
+            task.setOnFailed(error -> {
+                print(appId, "error", String.valueOf(error.getMessage()));
+                onError.accept(appId, error);
+            });
+            tasks.add(task);
+        }
+        var sweep = new UpdateSweep(tasks);
+        sweep.setMaxConcurrentRequests(parallel);
+        return sweep;
+    }
+
+    private void print(String appId, String key, String value) {
+        try {
+            var line = JSON.writeValueAsString(JSON.createObjectNode().put("appId", appId).put(key, value));
+            synchronized (out) {
+                out.println(line);
+                out.flush();
+            }
+        } catch (IOException e) {
+            LOG.error(e.toString(), e.getCause());
+        }
+    }
+
+    private static List<String> readAppIds() throws IOException {
+        List<String> appIds = new ArrayList<>();
+        var in = new BufferedReader(new InputStreamReader(System.in, StandardCharsets.UTF_8));
+        for (String line = in.readLine(); line != null; line = in.readLine()) {
+            var appId = line.strip();
+            if (!appId.isEmpty() && !appId.startsWith("#")) appIds.add(appId);
+        }
+        return appIds;
+    }
+
+    private static String value(String[] args, int i, String option) {
+        if (i >= args.length) throw new IllegalArgumentException("Missing value for " + option);
+        return args[i];
+    }
+
+    private static long number(String[] args, int i, String option) {
+        var value = value(args, i, option);
+        try {
+            return Long.parseLong(value);
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Not a number for " + option + ": " + value, e);
+        }
+    }
+
+    private static void usage(String error) {
+        System.err.println(error);
+        System.err.println("Usage: UpdateCheckCli [--daemon] [--interval SECONDS] [--parallel N] [appId...]");
+        System.exit(2);
+    }
+
+    @FunctionalInterface
+    private interface ResultListener<T> {
+        void accept(String appId, T result);
+    }
+}
@@ -0,0 +1,59 @@
+package org.purejava.portal.cli;
+
+import org.freedesktop.dbus.exceptions.DBusException;
+import org.freedesktop.dbus.messages.DBusSignal;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * The object exported by {@link UpdateCheckCli} in daemon mode.
+ */
+class UpdateCheckerDaemon implements UpdateCheckerService {
+
+    private static final Logger LOG = LoggerFactory.getLogger(UpdateCheckerDaemon.class);
+
+    private final Sender sender;
+    private final Map<String, String> versions = new ConcurrentHashMap<>();
+
+    /**
+     * @param sender emits the signals, usually {@code connection::sendMessage}
+     */
+    UpdateCheckerDaemon(Sender sender) {
+        this.sender = sender;
+    }
+
+    /**
+     * Stores the version found for an app and emits {@link VersionChanged} if it differs from the previous one.
+     */
+    void update(String appId, String version) {
+        if (version.equals(versions.put(appId, version))) return;
+        try {
+            sender.send(new VersionChanged(OBJECT_PATH, appId, version));
+        } catch (DBusException e) {
+            LOG.error(e.toString(), e.getCause());
+        }
+    }
+
+    @Override
+    public String GetVersion(String appId) {
+        return versions.getOrDefault(appId, "");
+    }
+
+    @Override
+    public Map<String, String> GetVersions() {
+        return Map.copyOf(versions);
+    }
+
+    @Override
+    public String getObjectPath() {
+        return OBJECT_PATH;
+    }
+
+    @FunctionalInterface
+    interface Sender {
+        void send(DBusSignal signal) throws DBusException;
+    }
+}
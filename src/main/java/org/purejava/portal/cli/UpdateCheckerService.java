@@ -0,0 +1,43 @@
+package org.purejava.portal.cli;
+
+import org.freedesktop.dbus.annotations.DBusInterfaceName;
+import org.freedesktop.dbus.exceptions.DBusException;
+import org.freedesktop.dbus.interfaces.DBusInterface;
+import org.freedesktop.dbus.messages.DBusSignal;
+
+import java.util.Map;
+
+/**
+ * Results of the update check daemon, exported on the session bus as {@value #BUS_NAME} at {@value #OBJECT_PATH}.
+ */
+@DBusInterfaceName(UpdateCheckerService.BUS_NAME)
+public interface UpdateCheckerService extends DBusInterface {
+
+    String BUS_NAME = "org.purejava.portal.UpdateChecker";
+    String OBJECT_PATH = "/org/purejava/portal/UpdateChecker";
+
+    /**
+     * Signal emitted when a newer version of a watched app was found.
+     */
+    class VersionChanged extends DBusSignal {
+        public final String appId;
+        public final String version;
+
+        public VersionChanged(String path, String appId, String version) throws DBusException {
+            super(path, appId, version);
+            this.appId = appId;
+            this.version = version;
+        }
+    }
+
+    /**
+     * @param appId the app to look up
+     * @return the latest version found on Flathub, or an empty string if there is none yet
+     */
+    String GetVersion(String appId);
+
+    /**
+     * @return the latest versions found on Flathub, by app id
+     */
+    Map<String, String> GetVersions();
+}
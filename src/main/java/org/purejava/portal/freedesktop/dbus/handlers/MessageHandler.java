@@ -2,24 +2,39 @@ package org.purejava.portal.freedesktop.dbus.handlers;
 
 import org.freedesktop.dbus.connections.impl.DBusConnection;
 import org.freedesktop.dbus.exceptions.DBusException;
+import org.freedesktop.dbus.messages.Message;
+import org.freedesktop.dbus.messages.MethodCall;
 import org.freedesktop.dbus.types.Variant;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+import java.util.function.Supplier;
 
 public class MessageHandler {
 
     private static final Logger LOG = LoggerFactory.getLogger(MessageHandler.class);
     private static final String DBUS_PROPERTIES = "org.freedesktop.DBus.Properties";
+    private static final long REPLY_TIMEOUT = 2000L;
 
     private final DBusConnection connection;
+    private final Map<CompletableFuture<?>, Thread> pending = new ConcurrentHashMap<>();
 
     public MessageHandler(DBusConnection connection) {
         this.connection = connection;
 
         if (this.connection != null) {
             Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+                cancelPending();
                 if (this.connection.isConnected()) {
                     this.connection.disconnect();
                 }
@@ -27,42 +42,164 @@ public class MessageHandler {
         }
     }
 
+    /**
+     * A method call to be sent as part of a batch.
+     */
+    public record Call(String service, String path, String iface, String method, String signature, Object... args) {
+    }
+
+    /**
+     * Sends a method call and waits for the reply. {@link #cancelPending()} stops the wait.
+     *
+     * @return the reply parameters, or {@code null} if the call failed, timed out or was cancelled
+     */
     public Object[] send(String service, String path, String iface, String method, String signature, Object... args) {
-        try {
-            var msgFactory = connection.getMessageFactory();
-            var message = msgFactory.createMethodCall(service, path, iface, method, (byte) 0, signature, args);
+        return await(sendAsync(service, path, iface, method, signature, args));
+    }
+
+    /**
+     * Sends a method call without blocking the caller. Cancelling the returned future stops waiting
+     * for the reply and frees the thread blocked on it right away.
+     *
+     * @return a future completing with the reply parameters, or {@code null} as with {@link #send}
+     */
+    public CompletableFuture<Object[]> sendAsync(String service, String path, String iface, String method, String signature, Object... args) {
+        return async(_ -> {
+            try {
+                var message = call(new Call(service, path, iface, method, signature, args));
+                return parametersOf(message.getReply(REPLY_TIMEOUT));
+            } catch (DBusException e) {
+                LOG.error("Unexpected D-Bus response:", e);
+                return null;
+            }
+        });
+    }
 
-            if (LOG.isTraceEnabled()) LOG.trace(String.valueOf(message));
-            connection.sendMessage(message);
+    /**
+     * Makes a call through a proxy of a remote object, e.g. one returned by
+     * {@link DBusConnection#getRemoteObject(String, String, Class)}, and waits for its result. The proxy waits for
+     * the reply on a virtual thread, so that {@link #cancelPending()} can stop the wait.
+     *
+     * @param call the proxy call
+     * @return the result of {@code call}, or {@code null} if it was cancelled
+     * @throws RuntimeException whatever {@code call} throws
+     */
+    public <T> T invoke(Supplier<T> call) {
+        return await(async(_ -> call.get()));
+    }
 
-            var response = message.getReply(2000L);
-            if (LOG.isTraceEnabled()) LOG.trace(String.valueOf(response));
+    /**
+     * Writes all method calls back-to-back before waiting for any reply, so the batch costs about one round trip
+     * instead of one per call. Replies are matched to their calls by serial number.
+     *
+     * @param calls the method calls to send
+     * @return a future completing with the reply parameters in the order of {@code calls};
+     * an entry is {@code null} where {@link #send} would have returned {@code null}
+     */
+    public CompletableFuture<List<Object[]>> sendBatch(List<Call> calls) {
+        return async(batch -> {
+            List<MethodCall> sent = new ArrayList<>(calls.size());
+            for (Call call : calls) {
+                try {
+                    sent.add(call(call));
+                } catch (DBusException e) {
+                    LOG.error("Unexpected D-Bus response:", e);
+                    sent.add(null);
+                }
+            }
 
-            Object[] parameters = null;
-            if (response != null) {
-                parameters = response.getParameters();
-                LOG.debug(Arrays.deepToString(parameters));
+            var deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(REPLY_TIMEOUT);
+            List<Object[]> replies = new ArrayList<>(sent.size());
+            for (MethodCall message : sent) {
+                if (batch.isCancelled()) return null;
+                if (null == message) {
+                    replies.add(null);
+                    continue;
+                }
+                var remaining = Math.max(1L, TimeUnit.NANOSECONDS.toMillis(deadline - System.nanoTime()));
+                try {
+                    replies.add(parametersOf(message.getReply(remaining)));
+                } catch (DBusException e) {
+                    LOG.error("Unexpected D-Bus response:", e);
+                    replies.add(null);
+                }
             }
+            return replies;
+        });
+    }
+
+    /**
+     * Cancels all method calls that are still waiting for a reply, whether sent with {@link #send},
+     * {@link #sendAsync}, {@link #sendBatch} or {@link #invoke}. Callers blocked in {@link #send} or
+     * {@link #invoke} get {@code null} right away.
+     */
+    public void cancelPending() {
+        pending.keySet().forEach(reply -> reply.cancel(true));
+    }
+
+    private MethodCall call(Call call) throws DBusException {
+        var msgFactory = connection.getMessageFactory();
+        var message = msgFactory.createMethodCall(call.service(), call.path(), call.iface(), call.method(), (byte) 0, call.signature(), call.args());
+
+        if (LOG.isTraceEnabled()) LOG.trace(String.valueOf(message));
+        connection.sendMessage(message);
+        return message;
+    }
+
+    private Object[] parametersOf(Message response) throws DBusException {
+        if (LOG.isTraceEnabled()) LOG.trace(String.valueOf(response));
+
+        Object[] parameters = null;
+        if (response != null) {
+            parameters = response.getParameters();
+            LOG.debug(Arrays.deepToString(parameters));
+        }
 
-            if (response instanceof org.freedesktop.dbus.messages.Error) {
-                var error = response.getName();
-                switch (error) {
-                    case "org.freedesktop.DBus.Error.NoReply",
-                         "org.freedesktop.DBus.Error.UnknownMethod",
-                         "org.freedesktop.dbus.exceptions.NotConnected" -> {
-                        LOG.debug(error);
-                        return null;
-                    }
-                    default -> throw new DBusException(error);
+        if (response instanceof org.freedesktop.dbus.messages.Error) {
+            var error = response.getName();
+            switch (error) {
+                case "org.freedesktop.DBus.Error.NoReply",
+                     "org.freedesktop.DBus.Error.UnknownMethod",
+                     "org.freedesktop.dbus.exceptions.NotConnected" -> {
+                    LOG.debug(error);
+                    return null;
                 }
+                default -> throw new DBusException(error);
             }
-            return parameters;
+        }
+        return parameters;
+    }
 
-        } catch (DBusException e) {
-            LOG.error("Unexpected D-Bus response:", e);
+    private static <T> T await(CompletableFuture<T> reply) {
+        try {
+            return reply.join();
+        } catch (CancellationException e) {
+            LOG.debug("Method call cancelled");
+            return null;
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof RuntimeException cause) throw cause;
+            if (e.getCause() instanceof Error cause) throw cause;
+            throw e;
         }
+    }
 
-        return null;
+    private <T> CompletableFuture<T> async(Function<CompletableFuture<T>, T> work) {
+        var reply = new CompletableFuture<T>();
+        var worker = Thread.ofVirtual().unstarted(() -> {
+            try {
+                reply.complete(work.apply(reply));
+            } catch (Throwable t) {
+                reply.completeExceptionally(t);
+            } finally {
+                pending.remove(reply);
+            }
+        });
+        pending.put(reply, worker);
+        reply.whenComplete((_, _) -> {
+            if (reply.isCancelled()) worker.interrupt();
+        });
+        worker.start();
+        return reply;
     }
 
     public Variant getProperty(String service, String path, String iface, String property) {
@@ -77,6 +214,10 @@ public class MessageHandler {
         return response == null ? null : (Variant) response[0];
     }
 
+    public Call getPropertyCall(String service, String path, String iface, String property) {
+        return new Call(service, path, DBUS_PROPERTIES, "Get", "ss", iface, property);
+    }
+
     public void setProperty(String service, String path, String iface, String property, Variant value) {
         send(service, path, DBUS_PROPERTIES,
                 "Set", "ssv", iface, property, value);
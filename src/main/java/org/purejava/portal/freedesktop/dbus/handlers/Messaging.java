@@ -6,6 +6,13 @@ import org.freedesktop.dbus.types.Variant;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+
 abstract public class Messaging {
 
     private static final Logger LOG = LoggerFactory.getLogger(Messaging.class);
@@ -32,10 +39,37 @@ abstract public class Messaging {
         return msg.send(serviceName, dbusPath, interfaceName, method, signature, arguments);
     }
 
+    public CompletableFuture<List<Object[]>> sendBatch(List<MessageHandler.Call> calls) {
+        return msg.sendBatch(calls);
+    }
+
     protected Variant getProperty(String property) {
         return msg.getProperty(serviceName, dbusPath, interfaceName, property);
     }
 
+    /**
+     * Reads several properties in one batch.
+     *
+     * @return the values in the order of {@code properties}; an entry is {@code null} where the property could not be read
+     */
+    protected List<Variant> getProperties(String... properties) {
+        var calls = Arrays.stream(properties)
+                .map(property -> msg.getPropertyCall(serviceName, dbusPath, interfaceName, property))
+                .toList();
+        var values = new ArrayList<Variant>(calls.size());
+        List<Object[]> replies;
+        try {
+            replies = msg.sendBatch(calls).join();
+        } catch (CancellationException e) {
+            LOG.debug("Reading properties cancelled");
+            replies = Collections.nCopies(calls.size(), null);
+        }
+        for (Object[] reply : replies) {
+            values.add(reply == null ? null : (Variant) reply[0]);
+        }
+        return values;
+    }
+
     protected Variant getAllProperties() {
         return msg.getAllProperties(serviceName, dbusPath, interfaceName);
     }
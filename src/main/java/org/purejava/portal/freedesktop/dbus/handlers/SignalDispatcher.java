@@ -0,0 +1,142 @@
+package org.purejava.portal.freedesktop.dbus.handlers;
+
+import org.freedesktop.dbus.DBusMatchRule;
+import org.freedesktop.dbus.connections.impl.DBusConnection;
+import org.freedesktop.dbus.exceptions.DBusException;
+import org.freedesktop.dbus.interfaces.DBusSigHandler;
+import org.freedesktop.dbus.matchrules.DBusMatchRuleBuilder;
+import org.freedesktop.dbus.messages.DBusSignal;
+import org.freedesktop.dbus.messages.constants.MessageTypes;
+import org.freedesktop.dbus.utils.DBusNamingUtil;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.Consumer;
+
+/**
+ * Routes D-Bus signals to subscribers by signal type, object path and optionally first argument.
+ * <p>
+ * Only one match rule is installed on the bus per signal type, path and argument, no matter how many subscribers
+ * listen to it, and it is removed again when the last of them unsubscribes. The handler of each match rule delivers
+ * straight to the subscribers of that rule, so the cost of dispatching does not grow with the number of
+ * subscriptions to other signals or paths.
+ */
+public class SignalDispatcher {
+
+    private static final Logger LOG = LoggerFactory.getLogger(SignalDispatcher.class);
+
+    private final Registrar registrar;
+    private final Map<RouteKey, Route<?>> routes = new HashMap<>();
+
+    public SignalDispatcher(DBusConnection connection) {
+        this(null == connection ? null : connection::addSigHandler);
+    }
+
+    SignalDispatcher(Registrar registrar) {
+        this.registrar = registrar;
+    }
+
+    /**
+     * Subscribes to a signal.
+     *
+     * @param type     the signal to subscribe to
+     * @param path     the object path emitting the signal, or {@code null} for any path
+     * @param listener called for every matching signal
+     * @return handle to unsubscribe with, or {@code null} if the match rule could not be installed
+     */
+    public <T extends DBusSignal> AutoCloseable subscribe(Class<T> type, String path, Consumer<? super T> listener) {
+        return subscribe(type, path, null, listener);
+    }
+
+    /**
+     * Subscribes to a signal whose first argument is a given string, e.g. {@code NameOwnerChanged} of one name.
+     * The bus then only sends the matching signals to this connection.
+     *
+     * @param type     the signal to subscribe to
+     * @param path     the object path emitting the signal, or {@code null} for any path
+     * @param arg0     the value of the first argument, or {@code null} for any value
+     * @param listener called for every matching signal
+     * @return handle to unsubscribe with, or {@code null} if the match rule could not be installed
+     */
+    public synchronized <T extends DBusSignal> AutoCloseable subscribe(Class<T> type, String path, String arg0, Consumer<? super T> listener) {
+        if (null == type || null == listener) {
+            LOG.error("Cannot subscribe to signal as required type or listener is missing");
+            return null;
+        }
+        if (null == registrar) {
+            LOG.error("Cannot subscribe to signal as required DBus connection is missing");
+            return null;
+        }
+        var key = new RouteKey(type, path, arg0);
+
+        @SuppressWarnings("unchecked")
+        var route = (Route<T>) routes.get(key);
+        if (null == route) {
+            var created = new Route<T>();
+            try {
+                created.handle = registrar.add(rule(type, path, arg0), (DBusSigHandler<T>) created::deliver);
+            } catch (DBusException e) {
+                LOG.error(e.toString(), e.getCause());
+                return null;
+            }
+            routes.put(key, created);
+            route = created;
+        }
+
+        var registered = route;
+        registered.listeners.add(listener);
+        return () -> unsubscribe(key, registered, listener);
+    }
+
+    static DBusMatchRule rule(Class<? extends DBusSignal> type, String path, String arg0) {
+        var builder = DBusMatchRuleBuilder.create()
+                .withType(MessageTypes.SIGNAL)
+                .withInterface(DBusNamingUtil.getInterfaceName(type.getEnclosingClass()))
+                .withMember(DBusNamingUtil.getSignalName(type));
+        if (null != path) builder.withPath(path);
+        if (null != arg0) builder.withArg0123(0, arg0);
+        return builder.build();
+    }
+
+    private synchronized <T extends DBusSignal> void unsubscribe(RouteKey key, Route<T> route, Consumer<? super T> listener) {
+        if (!route.listeners.remove(listener) || !route.listeners.isEmpty()) return;
+
+        routes.remove(key, route);
+        try {
+            route.handle.close();
+        } catch (Exception e) {
+            LOG.error(e.toString(), e.getCause());
+        }
+    }
+
+    /**
+     * Installs a match rule with its handler, usually {@link DBusConnection#addSigHandler(DBusMatchRule, DBusSigHandler)}.
+     */
+    @FunctionalInterface
+    interface Registrar {
+        <T extends DBusSignal> AutoCloseable add(DBusMatchRule rule, DBusSigHandler<T> handler) throws DBusException;
+    }
+
+    private record RouteKey(Class<? extends DBusSignal> type, String path, String arg0) {
+    }
+
+    private static final class Route<T extends DBusSignal> {
+        private final List<Consumer<? super T>> listeners = new CopyOnWriteArrayList<>();
+        private AutoCloseable handle;
+
+        // the match rule of the route only lets through signals of its type, path and argument
+        private void deliver(T signal) {
+            for (Consumer<? super T> listener : listeners) {
+                try {
+                    listener.accept(signal);
+                } catch (RuntimeException e) {
+                    LOG.error("Signal listener failed", e);
+                }
+            }
+        }
+    }
+}
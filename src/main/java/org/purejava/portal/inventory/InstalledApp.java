@@ -0,0 +1,24 @@
+package org.purejava.portal.inventory;
+
+import java.nio.file.Path;
+
+/**
+ * An app deployed in a Flatpak installation.
+ *
+ * @param appId        the app id, e.g. org.gimp.GIMP
+ * @param arch         the architecture, e.g. x86_64
+ * @param branch       the branch, e.g. stable
+ * @param commit       the active commit
+ * @param version      the version of the newest release in the app's metainfo, null if it has none
+ * @param installation the root of the installation, e.g. /var/lib/flatpak
+ */
+public record InstalledApp(String appId, String arch, String branch, String commit, String version, Path installation) {
+
+    /**
+     * @param latestVersion the latest version available, e.g. as found by an UpdateCheckerTask
+     * @return true if the deployed version is known and differs from {@code latestVersion}
+     */
+    public boolean isOutdated(String latestVersion) {
+        return null != version && null != latestVersion && !version.equals(latestVersion);
+    }
+}
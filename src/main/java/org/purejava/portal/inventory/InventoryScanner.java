@@ -0,0 +1,222 @@
+package org.purejava.portal.inventory;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.DateTimeException;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.stream.Stream;
+
+/**
+ * Finds the apps deployed in Flatpak installations by reading the installations on disk, without running
+ * the {@code flatpak} command.
+ * <p>
+ * For every {@code app/<appId>/<arch>/<branch>} of an installation, the {@code active} symlink names the deployed
+ * commit, and the version is taken from the newest release listed in the metainfo of that deployment.
+ * Installations are scanned in parallel. The scanner remembers what it found, so a rescan only reads the metainfo
+ * of deployments whose active commit changed.
+ */
+public class InventoryScanner {
+
+    private static final Logger LOG = LoggerFactory.getLogger(InventoryScanner.class);
+    private static final Path SYSTEM_INSTALLATION = Path.of("/var/lib/flatpak");
+    private static final XMLInputFactory XML = XMLInputFactory.newFactory();
+
+    static {
+        XML.setProperty(XMLInputFactory.SUPPORT_DTD, false);
+        XML.setProperty(XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES, false);
+    }
+
+    private final List<Path> installations;
+    private final Map<Path, InstalledApp> known = new ConcurrentHashMap<>();
+
+    /**
+     * Scans the default system and per-user installations.
+     */
+    public InventoryScanner() {
+        this(List.of(SYSTEM_INSTALLATION, userInstallation()));
+    }
+
+    /**
+     * @param installations the roots of the installations to scan, e.g. /var/lib/flatpak
+     */
+    public InventoryScanner(List<Path> installations) {
+        this.installations = List.copyOf(installations);
+    }
+
+    /**
+     * Scans all installations.
+     *
+     * @return the deployed apps, sorted by app id; installations that don't exist are skipped
+     */
+    public List<InstalledApp> scan() {
+        List<InstalledApp> apps = new ArrayList<>();
+        try (var executor = Executors.newVirtualThreadPerTaskExecutor()) {
+            List<Future<List<InstalledApp>>> scans = new ArrayList<>();
+            for (Path installation : installations) {
+                scans.add(executor.submit(() -> scan(installation)));
+            }
+            for (Future<List<InstalledApp>> scan : scans) {
+                apps.addAll(scan.get());
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (ExecutionException e) {
+            LOG.error(e.toString(), e.getCause());
+        }
+        apps.sort(Comparator.comparing(InstalledApp::appId).thenComparing(app -> app.installation().toString()));
+        return apps;
+    }
+
+    /**
+     * Scans all installations.
+     *
+     * @return the ids of all deployed apps
+     */
+    public Set<String> appIds() {
+        var appIds = new TreeSet<String>();
+        scan().forEach(app -> appIds.add(app.appId()));
+        return appIds;
+    }
+
+    private List<InstalledApp> scan(Path installation) {
+        List<InstalledApp> apps = new ArrayList<>();
+        var appDir = installation.resolve("app");
+        if (!Files.isDirectory(appDir)) return apps;
+
+        // app/<appId>/<arch>/<branch>
+        try (Stream<Path> refs = Files.find(appDir, 3, (path, attrs) -> attrs.isDirectory() && appDir.relativize(path).getNameCount() == 3)) {
+            refs.forEach(ref -> {
+                var app = deployment(installation, ref);
+                if (null != app) apps.add(app);
+            });
+        } catch (IOException | RuntimeException e) {
+            LOG.error("Cannot scan Flatpak installation {}: {}", installation, e.toString());
+        }
+
+        // forget deployments that are gone
+        known.keySet().removeIf(ref -> ref.startsWith(appDir) && !Files.isDirectory(ref));
+        return apps;
+    }
+
+    private InstalledApp deployment(Path installation, Path ref) {
+        var active = ref.resolve("active");
+        if (!Files.isSymbolicLink(active)) return null;
+
+        String commit;
+        try {
+            commit = Files.readSymbolicLink(active).getFileName().toString();
+        } catch (IOException e) {
+            LOG.debug("Cannot read {}: {}", active, e.toString());
+            return null;
+        }
+
+        var cached = known.get(ref);
+        if (null != cached && cached.commit().equals(commit)) return cached;
+
+        var appId = ref.getParent().getParent().getFileName().toString();
+        var arch = ref.getParent().getFileName().toString();
+        var branch = ref.getFileName().toString();
+        var app = new InstalledApp(appId, arch, branch, commit, version(ref.resolve(commit), appId), installation);
+        known.put(ref, app);
+        return app;
+    }
+
+    private static String version(Path deployment, String appId) {
+        var share = deployment.resolve("files").resolve("share");
+        for (Path metainfo : List.of(
+                share.resolve("metainfo").resolve(appId + ".metainfo.xml"),
+                share.resolve("metainfo").resolve(appId + ".appdata.xml"),
+                share.resolve("appdata").resolve(appId + ".appdata.xml"))) {
+            if (Files.isRegularFile(metainfo)) return newestRelease(metainfo);
+        }
+        return null;
+    }
+
+    /**
+     * Reads the version of the newest release, by its {@code timestamp} or, where that is missing, its ISO-8601
+     * {@code date}. Releases with neither count as older than those with one, among them the first listed wins, as
+     * releases are listed newest first by convention.
+     */
+    static String newestRelease(Path metainfo) {
+        try (var in = Files.newInputStream(metainfo)) {
+            var reader = XML.createXMLStreamReader(in);
+            try {
+                String version = null;
+                long newest = Long.MIN_VALUE;
+                while (reader.hasNext()) {
+                    if (reader.next() != XMLStreamConstants.START_ELEMENT || !"release".equals(reader.getLocalName())) {
+                        continue;
+                    }
+                    var v = reader.getAttributeValue(null, "version");
+                    var timestamp = timestamp(reader.getAttributeValue(null, "timestamp"));
+                    if (timestamp == Long.MIN_VALUE) timestamp = date(reader.getAttributeValue(null, "date"));
+                    if (null != v && (null == version || timestamp > newest)) {
+                        version = v;
+                        newest = timestamp;
+                    }
+                }
+                return version;
+            } finally {
+                reader.close();
+            }
+        } catch (IOException | XMLStreamException e) {
+            LOG.debug("Cannot read {}: {}", metainfo, e.toString());
+            return null;
+        }
+    }
+
+    private static long timestamp(String value) {
+        if (null == value) return Long.MIN_VALUE;
+        try {
+            return Long.parseLong(value.strip());
+        } catch (NumberFormatException e) {
+            return Long.MIN_VALUE;
+        }
+    }
+
+    /**
+     * @return the seconds since the epoch, a date without time counting from midnight UTC
+     */
+    private static long date(String value) {
+        if (null == value) return Long.MIN_VALUE;
+        var trimmed = value.strip();
+        try {
+            if (trimmed.length() == 10) return LocalDate.parse(trimmed).atStartOfDay(ZoneOffset.UTC).toEpochSecond();
+            var parsed = DateTimeFormatter.ISO_DATE_TIME.parseBest(trimmed, ZonedDateTime::from, LocalDateTime::from);
+            return parsed instanceof ZonedDateTime dateTime
+                    ? dateTime.toEpochSecond()
+                    : ((LocalDateTime) parsed).toEpochSecond(ZoneOffset.UTC);
+        } catch (DateTimeException e) {
+            return Long.MIN_VALUE;
+        }
+    }
+
+    private static Path userInstallation() {
+        var dataHome = System.getenv("XDG_DATA_HOME");
+        var base = null == dataHome || dataHome.isBlank()
+                ? Path.of(System.getProperty("user.home"), ".local", "share")
+                : Path.of(dataHome);
+        return base.resolve("flatpak");
+    }
+}
@@ -0,0 +1,98 @@
+package org.purejava.portal.rest;
+
+import java.time.Duration;
+
+/**
+ * Circuit breaker guarding requests to Flathub.
+ * <p>
+ * After {@code failureThreshold} consecutive failures the breaker opens and requests fail fast for
+ * {@code openDuration}. Then a single trial request is let through: if it succeeds, the breaker closes again,
+ * otherwise it stays open for another {@code openDuration}.
+ */
+public class CircuitBreaker {
+
+    public enum State {
+        CLOSED, OPEN, HALF_OPEN
+    }
+
+    /**
+     * Admission of one request, see {@link #acquire()}.
+     */
+    public static final class Permit {
+        private Permit() {
+        }
+    }
+
+    private static final Permit ADMITTED = new Permit();
+
+    private final int failureThreshold;
+    private final long openNanos;
+    private State state = State.CLOSED;
+    private int failures;
+    private long openedAt;
+    private Permit trial;
+
+    /**
+     * @param failureThreshold the number of consecutive failures that opens the breaker
+     * @param openDuration     how long the breaker stays open before a trial request is let through
+     */
+    public CircuitBreaker(int failureThreshold, Duration openDuration) {
+        if (failureThreshold < 1 || openDuration.isNegative()) {
+            throw new IllegalArgumentException("failureThreshold must be positive and openDuration must not be negative");
+        }
+        this.failureThreshold = failureThreshold;
+        this.openNanos = openDuration.toNanos();
+    }
+
+    /**
+     * Admits a request. The permit of the trial request of a half open breaker is distinct, so releasing it with
+     * {@link #onIgnored(Permit)} can't be confused with releasing some other request.
+     *
+     * @return the permit to send the request, null if it should fail fast
+     */
+    public synchronized Permit acquire() {
+        return switch (state) {
+            case CLOSED -> ADMITTED;
+            case HALF_OPEN -> null;
+            case OPEN -> {
+                if (System.nanoTime() - openedAt < openNanos) yield null;
+                state = State.HALF_OPEN;
+                trial = new Permit();
+                yield trial;
+            }
+        };
+    }
+
+    public synchronized void onSuccess() {
+        state = State.CLOSED;
+        failures = 0;
+        trial = null;
+    }
+
+    public synchronized void onFailure() {
+        failures++;
+        if (state == State.HALF_OPEN || failures >= failureThreshold) {
+            state = State.OPEN;
+            openedAt = System.nanoTime();
+            trial = null;
+        }
+    }
+
+    /**
+     * Releases a request without a result, e.g. when it was cancelled. If it was the trial request of a half open
+     * breaker, the next request becomes the trial; other requests don't affect the breaker.
+     *
+     * @param permit the permit the request was admitted with
+     */
+    public synchronized void onIgnored(Permit permit) {
+        if (state == State.HALF_OPEN && null != permit && permit == trial) {
+            state = State.OPEN;
+            openedAt = System.nanoTime() - openNanos;
+            trial = null;
+        }
+    }
+
+    public synchronized State getState() {
+        return state;
+    }
+}
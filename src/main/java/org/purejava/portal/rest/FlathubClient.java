@@ -0,0 +1,273 @@
+package org.purejava.portal.rest;
+
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Map;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+/**
+ * Thin client for the Flathub appstream API, shared by {@link UpdateCheckerTask} and {@link UpdateSweep}.
+ * All requests go through one {@link HttpClient}, so connections are reused and, with HTTP/2,
+ * concurrent requests are multiplexed over a single socket.
+ * Requests that fail for a transient reason are retried according to the {@link RetryPolicy}.
+ */
+final class FlathubClient {
+
+    static final URI DEFAULT_API = URI.create("https://flathub.org/api/v2/");
+    private static final Duration TIMEOUT = Duration.ofSeconds(10);
+    private static final ObjectMapper JSON = new ObjectMapper();
+    private static final HttpClient HTTP = HttpClient.newBuilder()
+            .version(HttpClient.Version.HTTP_2)
+            .connectTimeout(TIMEOUT)
+            .build();
+    private static final FlathubClient SHARED = new FlathubClient(DEFAULT_API);
+
+    private final URI api;
+    private final Map<String, String> lastVersions = new ConcurrentHashMap<>();
+    private volatile TokenBucket rateLimiter = new TokenBucket(10, 5.0);
+    private volatile CircuitBreaker circuitBreaker = new CircuitBreaker(5, Duration.ofSeconds(30));
+    private volatile RetryPolicy retryPolicy = new RetryPolicy(3, Duration.ofMillis(500), Duration.ofSeconds(30), 0.2);
+
+    FlathubClient(URI api) {
+        this.api = api;
+    }
+
+    static FlathubClient shared() {
+        return SHARED;
+    }
+
+    /**
+     * Looks up the latest released version of an app.
+     *
+     * @param appId the Flathub app id
+     * @return the version of the release with the newest timestamp
+     */
+    CompletableFuture<String> latestVersion(String appId) {
+        return retrying(() -> guarded(() -> get("appstream/" + appId, in -> {
+            var version = latestRelease(in);
+            lastVersions.put(appId, version);
+            return version;
+        }), () -> lastVersions.get(appId)));
+    }
+
+    void setRateLimiter(TokenBucket rateLimiter) {
+        this.rateLimiter = rateLimiter;
+    }
+
+    void setCircuitBreaker(CircuitBreaker circuitBreaker) {
+        this.circuitBreaker = circuitBreaker;
+    }
+
+    void setRetryPolicy(RetryPolicy retryPolicy) {
+        this.retryPolicy = retryPolicy;
+    }
+
+    /**
+     * Makes attempts until one succeeds or the retry policy gives up. Every attempt goes through the rate limiter and
+     * the circuit breaker again; cancelling the result cancels the current attempt or skips a pending retry.
+     */
+    private <T> CompletableFuture<T> retrying(Supplier<CompletableFuture<T>> attempt) {
+        var policy = retryPolicy;
+        policy.onRequest();
+        var result = new CompletableFuture<T>();
+        attempt(result, attempt, policy, 1, Duration.ZERO);
+        return result;
+    }
+
+    private <T> void attempt(CompletableFuture<T> result, Supplier<CompletableFuture<T>> attempt, RetryPolicy policy, int n, Duration delay) {
+        if (result.isDone()) return;
+        var current = attempt.get();
+        result.whenComplete((_, _) -> {
+            if (result.isCancelled()) current.cancel(true);
+        });
+        current.whenComplete((value, t) -> {
+            if (null == t) {
+                result.complete(value);
+                return;
+            }
+            var next = policy.nextDelay(n, delay, unwrap(t));
+            if (null == next) {
+                result.completeExceptionally(t);
+            } else {
+                CompletableFuture.delayedExecutor(next.toNanos(), TimeUnit.NANOSECONDS)
+                        .execute(() -> attempt(result, attempt, policy, n + 1, next));
+            }
+        });
+    }
+
+    /**
+     * Sends a request through the rate limiter and the circuit breaker. While the breaker is open, the request is not
+     * sent and the future completes with the fallback, or fails if there is none.
+     */
+    private <T> CompletableFuture<T> guarded(Supplier<CompletableFuture<T>> send, Supplier<T> fallback) {
+        var breaker = circuitBreaker;
+        var permit = breaker.acquire();
+        if (null == permit) {
+            var cached = fallback.get();
+            return null != cached
+                    ? CompletableFuture.completedFuture(cached)
+                    : CompletableFuture.failedFuture(new IOException("Failed to check for updates: Flathub unavailable"));
+        }
+        var wait = rateLimiter.tryReserve(TIMEOUT);
+        if (null == wait) {
+            breaker.onIgnored(permit);
+            return CompletableFuture.failedFuture(new IOException("Failed to check for updates: too many requests"));
+        }
+
+        var result = new CompletableFuture<T>();
+        Runnable start = () -> {
+            if (result.isDone()) {
+                breaker.onIgnored(permit);
+                return;
+            }
+            CompletableFuture<T> request;
+            try {
+                request = send.get();
+            } catch (RuntimeException e) {
+                // runs on the delayed executor, which would swallow it and leave result and permit pending
+                record(breaker, permit, e);
+                result.completeExceptionally(e);
+                return;
+            }
+            result.whenComplete((_, _) -> {
+                if (result.isCancelled()) request.cancel(true);
+            });
+            request.whenComplete((value, t) -> {
+                if (null == t) {
+                    breaker.onSuccess();
+                    result.complete(value);
+                } else {
+                    record(breaker, permit, unwrap(t));
+                    result.completeExceptionally(t);
+                }
+            });
+        };
+        if (wait.isZero()) {
+            start.run();
+        } else {
+            CompletableFuture.delayedExecutor(wait.toNanos(), TimeUnit.NANOSECONDS).execute(start);
+        }
+        return result;
+    }
+
+    private static void record(CircuitBreaker breaker, CircuitBreaker.Permit permit, Throwable t) {
+        if (t instanceof CancellationException || t instanceof IllegalArgumentException) {
+            // the request never reached Flathub
+            breaker.onIgnored(permit);
+        } else if (t instanceof FlathubException e && !e.isServerError()) {
+            // Flathub is up, it just didn't like the request
+            breaker.onSuccess();
+        } else {
+            breaker.onFailure();
+        }
+    }
+
+    private <T> CompletableFuture<T> get(String endpoint, BodyReader<T> reader) {
+        HttpRequest request;
+        try {
+            request = HttpRequest.newBuilder()
+                    .uri(api.resolve(endpoint))
+                    .GET()
+                    .timeout(TIMEOUT)
+                    .build();
+        } catch (IllegalArgumentException e) {
+            // e.g. an app id with a space, read from the command line
+            return CompletableFuture.failedFuture(new IllegalArgumentException("Cannot check for updates as the request is invalid: " + endpoint, e));
+        }
+
+        var response = HTTP.sendAsync(request, HttpResponse.BodyHandlers.ofInputStream());
+        var result = response.thenApply(r -> {
+            try (InputStream in = r.body()) {
+                if (r.statusCode() != 200) {
+                    var retryAfter = r.headers().firstValue("Retry-After")
+                            .map(value -> FlathubException.retryAfter(value, Instant.now()))
+                            .orElse(null);
+                    throw new FlathubException(r.statusCode(), retryAfter);
+                }
+                return reader.read(in);
+            } catch (IOException e) {
+                throw new CompletionException(e);
+            }
+        });
+        // cancelling the dependent stage would otherwise leave the exchange running
+        result.whenComplete((_, _) -> {
+            if (result.isCancelled()) response.cancel(true);
+        });
+        return result;
+    }
+
+    static Throwable unwrap(Throwable t) {
+        return t instanceof CompletionException && t.getCause() != null ? t.getCause() : t;
+    }
+
+    static String latestRelease(InputStream in) throws IOException {
+        try (JsonParser parser = JSON.createParser(in)) {
+            if (parser.nextToken() != JsonToken.START_OBJECT) {
+                throw new IOException("'releases' array not found in response");
+            }
+            while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                var field = parser.currentName();
+                var token = parser.nextToken();
+                if ("releases".equals(field)) {
+                    if (token != JsonToken.START_ARRAY) {
+                        throw new IOException("'releases' array not found in response");
+                    }
+                    return newestVersion(parser);
+                }
+                parser.skipChildren();
+            }
+            throw new IOException("'releases' array not found in response");
+        }
+    }
+
+    private static String newestVersion(JsonParser parser) throws IOException {
+        boolean found = false;
+        long latestTimestamp = 0;
+        String latestVersion = null;
+
+        while (parser.nextToken() == JsonToken.START_OBJECT) {
+            long timestamp = 0;
+            String version = null;
+            while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                var field = parser.currentName();
+                parser.nextToken();
+                switch (field) {
+                    case "timestamp" -> timestamp = parser.getValueAsLong();
+                    case "version" -> version = parser.getValueAsString();
+                    default -> parser.skipChildren();
+                }
+            }
+            if (!found || timestamp > latestTimestamp) {
+                found = true;
+                latestTimestamp = timestamp;
+                latestVersion = version;
+            }
+        }
+
+        if (latestVersion != null) {
+            return latestVersion;
+        } else {
+            throw new IOException("No valid latest release found");
+        }
+    }
+
+    @FunctionalInterface
+    private interface BodyReader<T> {
+        T read(InputStream in) throws IOException;
+    }
+}
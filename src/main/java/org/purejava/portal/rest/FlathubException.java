@@ -0,0 +1,83 @@
+package org.purejava.portal.rest;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+
+/**
+ * Flathub answered a request with an HTTP status other than 200.
+ */
+public class FlathubException extends IOException {
+
+    private final int statusCode;
+    private final Duration retryAfter;
+
+    public FlathubException(int statusCode) {
+        this(statusCode, null);
+    }
+
+    /**
+     * @param statusCode the HTTP status
+     * @param retryAfter how long Flathub asked to wait before trying again, null if it didn't say
+     */
+    public FlathubException(int statusCode, Duration retryAfter) {
+        super("Failed to check for updates: HTTP " + statusCode);
+        this.statusCode = statusCode;
+        this.retryAfter = retryAfter;
+    }
+
+    public int getStatusCode() {
+        return statusCode;
+    }
+
+    /**
+     * @return the wait requested by the {@code Retry-After} header of the response, null if there was none
+     */
+    public Duration getRetryAfter() {
+        return retryAfter;
+    }
+
+    /**
+     * @return true if the status hints at an overloaded or failing backend rather than at a bad request
+     */
+    public boolean isServerError() {
+        return statusCode == 429 || statusCode >= 500;
+    }
+
+    /**
+     * @return true if the same request may well succeed when sent again later
+     */
+    public boolean isRetryable() {
+        return switch (statusCode) {
+            case 408, 429, 502, 503, 504 -> true;
+            default -> false;
+        };
+    }
+
+    /**
+     * Parses a {@code Retry-After} header, which holds either a number of seconds or an HTTP-date.
+     *
+     * @param value the header value
+     * @param now   the time the response was received
+     * @return the time to wait, {@link Duration#ZERO} for a date in the past, null if the value cannot be parsed
+     */
+    static Duration retryAfter(String value, Instant now) {
+        if (null == value || value.isBlank()) return null;
+        var trimmed = value.strip();
+        try {
+            var seconds = Long.parseLong(trimmed);
+            return seconds < 0 ? null : Duration.ofSeconds(seconds);
+        } catch (NumberFormatException e) {
+            // not delay-seconds, try an HTTP-date
+        }
+        try {
+            var wait = Duration.between(now, ZonedDateTime.parse(trimmed, DateTimeFormatter.RFC_1123_DATE_TIME).toInstant());
+            return wait.isNegative() ? Duration.ZERO : wait;
+        } catch (DateTimeParseException e) {
+            return null;
+        }
+    }
+}
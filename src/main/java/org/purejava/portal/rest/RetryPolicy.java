@@ -0,0 +1,97 @@
+package org.purejava.portal.rest;
+
+import java.io.EOFException;
+import java.net.ConnectException;
+import java.net.SocketException;
+import java.net.http.HttpTimeoutException;
+import java.time.Duration;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Retries requests to Flathub that failed for a transient reason: a 408, 429, 502, 503 or 504 response, a timeout
+ * or a broken connection.
+ * <p>
+ * The delay before a retry is drawn with decorrelated jitter, i.e. at random between {@code baseDelay} and three times
+ * the previous delay, or three times {@code baseDelay} before the first retry, capped at {@code maxDelay}. If Flathub
+ * sent a {@code Retry-After} header, the retry waits at least that long; if it asks for more than {@code maxDelay},
+ * the request is not retried at all.
+ * <p>
+ * Retries are paid from a budget shared by all requests using the policy: every first attempt adds
+ * {@code retryRatio} to it, every retry takes 1. The budget holds at most {@value #BUDGET_CAP} retries, so a burst of
+ * failures is retried only a few times and, while Flathub is in trouble, retries stay a fraction of the requests.
+ */
+public class RetryPolicy {
+
+    /**
+     * Never retries.
+     */
+    public static final RetryPolicy NONE = new RetryPolicy(1, Duration.ZERO, Duration.ZERO, 0.0);
+
+    static final double BUDGET_CAP = 10.0;
+
+    private final int maxAttempts;
+    private final long baseNanos;
+    private final long maxNanos;
+    private final double retryRatio;
+    private double budget = BUDGET_CAP;
+
+    /**
+     * @param maxAttempts the number of attempts per request including the first one, 1 disables retries
+     * @param baseDelay   the shortest delay before a retry
+     * @param maxDelay    the longest delay before a retry
+     * @param retryRatio  the number of retries earned by each request, e.g. 0.2 to allow one retry per five requests
+     */
+    public RetryPolicy(int maxAttempts, Duration baseDelay, Duration maxDelay, double retryRatio) {
+        if (maxAttempts < 1 || baseDelay.isNegative() || maxDelay.compareTo(baseDelay) < 0 || retryRatio < 0) {
+            throw new IllegalArgumentException("maxAttempts must be positive, maxDelay must not be shorter than baseDelay and retryRatio must not be negative");
+        }
+        this.maxAttempts = maxAttempts;
+        this.baseNanos = baseDelay.toNanos();
+        this.maxNanos = maxDelay.toNanos();
+        this.retryRatio = retryRatio;
+    }
+
+    /**
+     * Called once per request before its first attempt.
+     */
+    synchronized void onRequest() {
+        budget = Math.min(BUDGET_CAP, budget + retryRatio);
+    }
+
+    /**
+     * Decides whether to retry after an attempt failed.
+     *
+     * @param attempt  the number of attempts made so far, starting at 1
+     * @param previous the delay before the failed attempt, {@link Duration#ZERO} for the first one
+     * @param t        what the attempt failed with
+     * @return how long to wait before the next attempt, null to give up
+     */
+    Duration nextDelay(int attempt, Duration previous, Throwable t) {
+        if (attempt >= maxAttempts || !isRetryable(t)) return null;
+
+        var retryAfter = t instanceof FlathubException e ? e.getRetryAfter() : null;
+        if (null != retryAfter && retryAfter.toNanos() > maxNanos) return null;
+        if (!withdraw()) return null;
+
+        // the first retry draws from base to 3 * base as well, so clients failing together don't retry together
+        var last = Math.max(baseNanos, previous.toNanos());
+        var upper = last > maxNanos / 3 ? maxNanos : last * 3;
+        var delay = upper > baseNanos ? ThreadLocalRandom.current().nextLong(baseNanos, upper + 1) : baseNanos;
+        if (null != retryAfter) delay = Math.max(delay, retryAfter.toNanos());
+        return Duration.ofNanos(delay);
+    }
+
+    static boolean isRetryable(Throwable t) {
+        if (t instanceof FlathubException e) return e.isRetryable();
+        return t instanceof HttpTimeoutException
+                || t instanceof ConnectException
+                || t instanceof SocketException
+                || t instanceof EOFException;
+    }
+
+    private synchronized boolean withdraw() {
+        if (budget < 1.0) return false;
+        budget -= 1.0;
+        return true;
+    }
+}
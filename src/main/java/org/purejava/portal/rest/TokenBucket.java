@@ -0,0 +1,57 @@
+package org.purejava.portal.rest;
+
+import java.time.Duration;
+
+/**
+ * Token bucket limiting the rate of requests to Flathub.
+ * <p>
+ * The bucket holds up to {@code capacity} tokens and is refilled at a constant rate. Every request takes one token;
+ * when the bucket is empty, the request is scheduled for when a token will be available instead of being sent
+ * right away.
+ */
+public class TokenBucket {
+
+    private final long capacity;
+    private final long nanosPerToken;
+    private long available;
+    private long refilledAt;
+
+    /**
+     * @param capacity        the number of requests that may be sent in a burst
+     * @param tokensPerSecond the sustained number of requests per second
+     */
+    public TokenBucket(long capacity, double tokensPerSecond) {
+        if (capacity < 1 || tokensPerSecond <= 0) {
+            throw new IllegalArgumentException("capacity and tokensPerSecond must be positive");
+        }
+        this.capacity = capacity;
+        this.nanosPerToken = (long) (1_000_000_000L / tokensPerSecond);
+        this.available = capacity;
+        this.refilledAt = System.nanoTime();
+    }
+
+    /**
+     * Takes a token if it becomes available within {@code maxWait}. A refused request takes no token, so a burst of
+     * refused requests doesn't delay the requests after it.
+     *
+     * @param maxWait the longest acceptable wait
+     * @return how long to wait before the request may be sent, null if that would be longer than {@code maxWait}
+     */
+    public synchronized Duration tryReserve(Duration maxWait) {
+        refill();
+        var wait = available > 0 ? 0 : (1 - available) * nanosPerToken - (System.nanoTime() - refilledAt);
+        if (wait > maxWait.toNanos()) return null;
+        available--;
+        return Duration.ofNanos(Math.max(0, wait));
+    }
+
+    private void refill() {
+        var now = System.nanoTime();
+        var tokens = (now - refilledAt) / nanosPerToken;
+        if (tokens > 0) {
+            available = Math.min(capacity, available + tokens);
+            refilledAt += tokens * nanosPerToken;
+        }
+        if (available == capacity) refilledAt = now;
+    }
+}
@@ -1,132 +1,182 @@
 package org.purejava.portal.rest;
 
-import com.fasterxml.jackson.databind.JsonNode;
-import com.fasterxml.jackson.databind.ObjectMapper;
-
-import java.io.IOException;
-import java.io.InputStream;
-import java.net.URI;
-import java.net.http.HttpClient;
-import java.net.http.HttpRequest;
-import java.net.http.HttpResponse;
 import java.time.Duration;
-import java.util.concurrent.*;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
 import java.util.function.Consumer;
 
+/**
+ * Looks up the latest version of an app on Flathub.
+ * <p>
+ * All methods may be called from any thread. At most one check runs at a time; {@link #start()} while a check is
+ * running has no effect.
+ */
 public class UpdateCheckerTask {
 
-    private static final String FLATHUB_API = "https://flathub.org/api/v2/appstream/";
-    private static final ObjectMapper JSON = new ObjectMapper();
-
     private final String appId;
-    private Duration delay = Duration.ZERO;
-
-    private Runnable onRunning;
-    private Consumer<String> onSucceeded;
-    private Consumer<Throwable> onFailed;
+    private final FlathubClient client;
+    private final AtomicReference<Run> run = new AtomicReference<>();
+    private volatile Duration delay = Duration.ZERO;
 
-    private Future<?> future;
+    private volatile Runnable onRunning;
+    private volatile Consumer<String> onSucceeded;
+    private volatile Consumer<Throwable> onFailed;
 
     public UpdateCheckerTask(String appId) {
+        this(appId, FlathubClient.shared());
+    }
+
+    UpdateCheckerTask(String appId, FlathubClient client) {
         this.appId = appId != null ? appId : "";
+        this.client = client;
     }
 
     public void start() {
-        if (future != null && !future.isDone()) return;
-
-        future = CompletableFuture.runAsync(() -> {
-            if (onRunning != null) onRunning.run();
-
-            if (!delay.isZero()) {
-                try {
-                    Thread.sleep(delay.toMillis());
-                } catch (InterruptedException _) {
-                    Thread.currentThread().interrupt();
-                    return;
-                }
-            }
-
-            try (var executor = Executors.newSingleThreadExecutor()) {
-                Future<String> internal = executor.submit(this::checkForUpdates);
-
-                String result = internal.get();
-                if (onSucceeded != null) onSucceeded.accept(result);
-            } catch (Throwable t) {
-                if (onFailed != null) onFailed.accept(t);
-            }
-        });
+        var next = new Run();
+        Run current;
+        do {
+            current = run.get();
+            if (current != null && !current.result.isDone()) return;
+        } while (!run.compareAndSet(current, next));
+
+        next.launch();
     }
 
+    /**
+     * Cancels the check. A pending delay is skipped and a request in flight is aborted,
+     * which releases its connection right away. Callbacks are not invoked for a cancelled check.
+     */
     public void cancel() {
-        if (future != null) {
-            future.cancel(true);
-        }
+        var current = run.get();
+        if (current != null) current.cancel();
     }
 
     public void reset() {
-        cancel();
-        future = null;
+        var current = run.getAndSet(null);
+        if (current != null) current.cancel();
     }
 
     public void setDelay(Duration delay) {
         this.delay = delay;
     }
 
+    public Runnable getOnRunning() {
+        return onRunning;
+    }
+
     public void setOnRunning(Runnable onRunning) {
         this.onRunning = onRunning;
     }
 
+    public Consumer<String> getOnSucceeded() {
+        return onSucceeded;
+    }
+
     public void setOnSucceeded(Consumer<String> onSucceeded) {
         this.onSucceeded = onSucceeded;
     }
 
+    public Consumer<Throwable> getOnFailed() {
+        return onFailed;
+    }
+
     public void setOnFailed(Consumer<Throwable> onFailed) {
         this.onFailed = onFailed;
     }
 
-    private String checkForUpdates() throws Exception {
-        try (var client = HttpClient.newHttpClient()) {
-            var uri = URI.create(FLATHUB_API + appId);
-            HttpRequest request = HttpRequest.newBuilder()
-                    .uri(uri)
-                    .GET()
-                    .timeout(Duration.ofSeconds(10))
-                    .build();
+    private CompletableFuture<String> checkForUpdates() {
+        return client.latestVersion(appId);
+    }
 
-            HttpResponse<InputStream> response = client.send(request, HttpResponse.BodyHandlers.ofInputStream());
+    void fireRunning() {
+        if (onRunning != null) onRunning.run();
+    }
 
-            if (response.statusCode() == 200) {
-                return getLatestRelease(response);
-            } else {
-                throw new IOException("Failed to check for updates: HTTP " + response.statusCode());
-            }
-        }
+    void fireSucceeded(String version) {
+        if (onSucceeded != null) onSucceeded.accept(version);
     }
 
-    private String getLatestRelease(HttpResponse<InputStream> response) throws IOException {
-        try (InputStream in = response.body()) {
-            var root = JSON.readTree(in);
-            var releases = root.get("releases");
-            if (releases == null || !releases.isArray()) {
-                throw new IOException("'releases' array not found in response");
-            }
+    void fireFailed(Throwable t) {
+        if (onFailed != null) onFailed.accept(t);
+    }
 
-            JsonNode latest = null;
-            for (JsonNode release : releases) {
-                if (latest == null || release.get("timestamp").asLong() > latest.get("timestamp").asLong()) {
-                    latest = release;
-                }
-            }
+    /**
+     * Replaces the rate limiter shared by all requests to Flathub.
+     *
+     * @param rateLimiter the new rate limiter
+     */
+    public static void setRateLimiter(TokenBucket rateLimiter) {
+        FlathubClient.shared().setRateLimiter(rateLimiter);
+    }
 
-            if (latest != null && latest.has("version")) {
-                return latest.get("version").asText();
-            } else {
-                throw new IOException("No valid latest release found");
-            }
-        }
+    /**
+     * Replaces the circuit breaker shared by all requests to Flathub. While it is open, tasks report the version
+     * found last for their app, or fail right away if there is none.
+     *
+     * @param circuitBreaker the new circuit breaker
+     */
+    public static void setCircuitBreaker(CircuitBreaker circuitBreaker) {
+        FlathubClient.shared().setCircuitBreaker(circuitBreaker);
+    }
+
+    /**
+     * Replaces the retry policy shared by all requests to Flathub, {@link RetryPolicy#NONE} disables retries.
+     * The retry budget of the policy is shared by all tasks.
+     *
+     * @param retryPolicy the new retry policy
+     */
+    public static void setRetryPolicy(RetryPolicy retryPolicy) {
+        FlathubClient.shared().setRetryPolicy(retryPolicy);
     }
 
     public String getAppId() {
         return appId;
     }
+
+    /**
+     * One check. Each stage is published before it checks whether the run was cancelled in the meantime,
+     * and {@link #cancel()} cancels the result before looking at the stages, so no stage started is missed.
+     */
+    private final class Run {
+        private final CompletableFuture<String> result = new CompletableFuture<>();
+        private volatile CompletableFuture<Void> head;
+        private volatile CompletableFuture<String> request;
+
+        private void launch() {
+            CompletableFuture<Void> stage = CompletableFuture.runAsync(UpdateCheckerTask.this::fireRunning);
+            var wait = delay;
+            if (!wait.isZero()) {
+                stage = stage.thenRunAsync(() -> {
+                }, CompletableFuture.delayedExecutor(wait.toMillis(), TimeUnit.MILLISECONDS));
+            }
+            head = stage;
+            if (result.isCancelled()) stage.cancel(true);
+
+            stage.thenCompose(_ -> {
+                        var sent = checkForUpdates();
+                        request = sent;
+                        if (result.isCancelled()) sent.cancel(true);
+                        return sent;
+                    })
+                    .whenComplete((version, t) -> {
+                        if (t == null) {
+                            if (result.complete(version)) fireSucceeded(version);
+                        } else if (!(FlathubClient.unwrap(t) instanceof CancellationException)) {
+                            if (result.completeExceptionally(t)) fireFailed(FlathubClient.unwrap(t));
+                        } else {
+                            result.cancel(true);
+                        }
+                    });
+        }
+
+        private void cancel() {
+            result.cancel(true);
+            var stage = head;
+            if (stage != null) stage.cancel(true);
+            var sent = request;
+            if (sent != null) sent.cancel(true);
+        }
+    }
 }
@@ -0,0 +1,102 @@
+package org.purejava.portal.rest;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Checks many apps against Flathub in one sweep.
+ * <p>
+ * Flathub has no endpoint returning the releases of several apps at once, so every app is looked up on its own,
+ * but all lookups share one connection and at most {@code maxConcurrentRequests} of them are in flight. An app id
+ * is looked up only once per sweep. Results are reported through the callbacks of the given
+ * {@link UpdateCheckerTask}s as they arrive; the tasks' delays are not applied.
+ */
+public class UpdateSweep {
+
+    private final Map<String, UpdateCheckerTask> tasks = new LinkedHashMap<>();
+    private final Set<CompletableFuture<?>> inFlight = ConcurrentHashMap.newKeySet();
+    private final FlathubClient client;
+    private volatile int maxConcurrentRequests = 8;
+
+    private volatile boolean cancelled;
+    private CompletableFuture<Void> future;
+
+    public UpdateSweep(Collection<UpdateCheckerTask> tasks) {
+        this(tasks, FlathubClient.shared());
+    }
+
+    UpdateSweep(Collection<UpdateCheckerTask> tasks, FlathubClient client) {
+        for (UpdateCheckerTask task : tasks) {
+            this.tasks.putIfAbsent(task.getAppId(), task);
+        }
+        this.client = client;
+    }
+
+    /**
+     * Starts the sweep.
+     *
+     * @return a future that completes when every task has been reported on
+     */
+    public synchronized CompletableFuture<Void> start() {
+        if (future != null && !future.isDone()) return future;
+        cancelled = false;
+
+        future = checkAll(new ArrayList<>(tasks.values()).iterator());
+        return future;
+    }
+
+    /**
+     * Stops the sweep. Requests in flight are aborted and tasks not yet checked are not reported on.
+     */
+    public synchronized void cancel() {
+        cancelled = true;
+        inFlight.forEach(f -> f.cancel(true));
+        if (future != null) future.cancel(true);
+    }
+
+    public void setMaxConcurrentRequests(int maxConcurrentRequests) {
+        this.maxConcurrentRequests = Math.max(1, maxConcurrentRequests);
+    }
+
+    private CompletableFuture<Void> checkAll(Iterator<UpdateCheckerTask> pending) {
+        List<CompletableFuture<Void>> workers = new ArrayList<>();
+        for (int i = 0; i < maxConcurrentRequests; i++) {
+            workers.add(checkNext(pending));
+        }
+        return CompletableFuture.allOf(workers.toArray(CompletableFuture[]::new));
+    }
+
+    private CompletableFuture<Void> checkNext(Iterator<UpdateCheckerTask> pending) {
+        UpdateCheckerTask task;
+        synchronized (pending) {
+            if (cancelled || !pending.hasNext()) return CompletableFuture.completedFuture(null);
+            task = pending.next();
+        }
+
+        task.fireRunning();
+        return track(client.latestVersion(task.getAppId()))
+                .handle((version, t) -> {
+                    if (cancelled) return null;
+                    if (t == null) {
+                        task.fireSucceeded(version);
+                    } else {
+                        task.fireFailed(FlathubClient.unwrap(t));
+                    }
+                    return null;
+                })
+                .thenCompose(_ -> checkNext(pending));
+    }
+
+    private <T> CompletableFuture<T> track(CompletableFuture<T> request) {
+        inFlight.add(request);
+        request.whenComplete((_, _) -> inFlight.remove(request));
+        return request;
+    }
+}
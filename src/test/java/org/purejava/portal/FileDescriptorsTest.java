@@ -0,0 +1,37 @@
+package org.purejava.portal;
+
+import org.freedesktop.dbus.FileDescriptor;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class FileDescriptorsTest {
+
+    @Test
+    void socketPairChannels() throws IOException {
+        var pair = FileDescriptors.socketPair();
+        try (var first = FileDescriptors.channel(pair.first()); var second = FileDescriptors.channel(pair.second())) {
+            FileDescriptors.close(pair.first());
+            FileDescriptors.close(pair.second());
+
+            first.write(ByteBuffer.wrap("ping".getBytes(StandardCharsets.UTF_8)));
+            var received = ByteBuffer.allocate(16);
+            assertEquals(4, second.read(received));
+            assertEquals("ping", new String(received.array(), 0, received.position(), StandardCharsets.UTF_8));
+
+            first.close();
+            assertEquals(-1, second.read(ByteBuffer.allocate(16)));
+        }
+    }
+
+    @Test
+    void failureNamesErrno() {
+        var e = assertThrows(IOException.class, () -> FileDescriptors.close(new FileDescriptor(-1)));
+        assertTrue(e.getMessage().startsWith("close failed: "), e.getMessage());
+        assertTrue(e.getMessage().endsWith("(errno 9)"), e.getMessage());
+    }
+}
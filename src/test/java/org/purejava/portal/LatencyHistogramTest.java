@@ -0,0 +1,34 @@
+package org.purejava.portal;
+
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class LatencyHistogramTest {
+
+    @Test
+    void bucketsAreWithinAnEighth() {
+        for (long value : new long[]{0, 7, 8, 1_000, 123_456_789, Long.MAX_VALUE}) {
+            var bucket = LatencyHistogram.bucket(value);
+            assertTrue(LatencyHistogram.highestValue(bucket) >= value);
+            assertTrue(LatencyHistogram.highestValue(bucket) - value <= value / 8);
+        }
+    }
+
+    @Test
+    void percentiles() {
+        var histogram = new LatencyHistogram();
+        assertEquals(Duration.ZERO, histogram.getPercentile(99));
+        for (int i = 1; i <= 100; i++) {
+            histogram.record(Duration.ofMillis(i));
+        }
+
+        assertEquals(100, histogram.getCount());
+        assertEquals(Duration.ofMillis(100), histogram.getMax());
+        var p50 = histogram.getPercentile(50).toNanos();
+        assertTrue(p50 >= Duration.ofMillis(50).toNanos() && p50 <= Duration.ofMillis(50).toNanos() * 9 / 8);
+        assertEquals(Duration.ofMillis(100), histogram.getPercentile(100));
+    }
+}
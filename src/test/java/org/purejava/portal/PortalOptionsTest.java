@@ -0,0 +1,25 @@
+package org.purejava.portal;
+
+import org.freedesktop.dbus.types.UInt32;
+import org.freedesktop.dbus.types.Variant;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class PortalOptionsTest {
+
+    @Test
+    void portalOptions() {
+        assertThrows(UnsupportedOperationException.class,
+                () -> UpdatePortal.OPTIONS_DUMMY.put("sandbox-flags", new Variant<>(new UInt32(1))));
+
+        var first = PortalOptions.spawn().sandboxExpose(List.of("cache")).sandboxFlags(1).build();
+        var second = PortalOptions.spawn().sandboxExpose(List.of("cache")).sandboxFlags(1).build();
+        assertSame(first.asMap().get("sandbox-expose"), second.asMap().get("sandbox-expose"));
+        assertEquals("as", first.asMap().get("sandbox-expose").getSig());
+        assertEquals("u", first.asMap().get("sandbox-flags").getSig());
+        assertSame(PortalOptions.EMPTY, PortalOptions.builder().build());
+    }
+}
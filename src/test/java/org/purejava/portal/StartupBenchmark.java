@@ -0,0 +1,31 @@
+package org.purejava.portal;
+
+import java.lang.management.ManagementFactory;
+
+/**
+ * Measures how long it takes to get from JVM start to a usable {@link UpdatePortal}.
+ * Also serves as the training run for the AOT cache, see the {@code aotCache} Gradle task.
+ */
+public class StartupBenchmark {
+
+    public static void main(String[] args) throws Exception {
+        var jvmStartup = ManagementFactory.getRuntimeMXBean().getUptime();
+
+        var start = System.nanoTime();
+        Class.forName("org.purejava.portal.UpdatePortal");
+        var classLoaded = System.nanoTime();
+
+        var portal = new UpdatePortal();
+        var constructed = System.nanoTime();
+
+        var info = portal.probe();
+        var probed = System.nanoTime();
+        portal.close();
+
+        System.out.printf("JVM startup:          %6d ms%n", jvmStartup);
+        System.out.printf("Load UpdatePortal:    %6.1f ms%n", (classLoaded - start) / 1e6);
+        System.out.printf("Construct portal:     %6.1f ms%n", (constructed - classLoaded) / 1e6);
+        System.out.printf("Probe portal:         %6.1f ms (%s)%n", (probed - constructed) / 1e6, info);
+        System.out.printf("Total until probed:   %6.1f ms%n", jvmStartup + (probed - start) / 1e6);
+    }
+}
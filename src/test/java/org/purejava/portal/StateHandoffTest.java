@@ -0,0 +1,29 @@
+package org.purejava.portal;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class StateHandoffTest {
+
+    @Test
+    void stateHandoffFraming() throws IOException {
+        var snapshot = new byte[StateHandoff.CHUNK_SIZE * 2 + 17];
+        new Random(42).nextBytes(snapshot);
+
+        var framed = new ByteArrayOutputStream();
+        try (var out = new StateHandoff.FrameOutputStream(framed)) {
+            out.write(snapshot, 0, 5);
+            out.write(snapshot, 5, snapshot.length - 5);
+        }
+
+        try (var in = new StateHandoff.FrameInputStream(new ByteArrayInputStream(framed.toByteArray()))) {
+            assertArrayEquals(snapshot, in.readAllBytes());
+        }
+    }
+}
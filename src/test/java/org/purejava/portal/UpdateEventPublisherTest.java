@@ -0,0 +1,168 @@
+package org.purejava.portal;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Flow;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BiConsumer;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class UpdateEventPublisherTest {
+
+    private static final String APP_ID = "org.purejava.App";
+
+    private final ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor();
+
+    @AfterEach
+    void tearDown() {
+        executor.shutdownNow();
+    }
+
+    @Test
+    void slowSubscriberGetsLatestVersion() throws InterruptedException {
+        var publisher = new UpdateEventPublisher(executor, 1);
+        var stuck = new CountDownLatch(1);
+        var release = new CountDownLatch(1);
+        var subscriber = new Recorder(Long.MAX_VALUE, (_, event) -> {
+            if (event.version().equals("1")) {
+                stuck.countDown();
+                await(release);
+            }
+        });
+        publisher.subscribe(subscriber);
+
+        publisher.publish(APP_ID, "1", UpdateEvent.Source.FLATHUB);
+        assertTrue(stuck.await(10, TimeUnit.SECONDS));
+        // with a buffer of one, this would block if the subscriber were called on the publisher's thread
+        assertTimeoutPreemptively(Duration.ofSeconds(10), () -> {
+            for (int i = 2; i <= 100; i++) {
+                publisher.publish(APP_ID, String.valueOf(i), UpdateEvent.Source.FLATHUB);
+            }
+        });
+        release.countDown();
+        publisher.close();
+
+        assertTrue(subscriber.completed.await(10, TimeUnit.SECONDS));
+        var versions = subscriber.versions();
+        assertEquals("1", versions.getFirst());
+        assertEquals("100", versions.getLast());
+        assertTrue(versions.size() < 10, "Expected the waiting events to be merged, but got " + versions);
+    }
+
+    @Test
+    void publishesEachVersionOncePerSource() throws InterruptedException {
+        var publisher = new UpdateEventPublisher(executor, 16);
+        var subscriber = new Recorder(Long.MAX_VALUE, (_, _) -> {
+        });
+        publisher.subscribe(subscriber);
+
+        publisher.publish(APP_ID, "1.1.0", UpdateEvent.Source.FLATHUB);
+        publisher.publish(APP_ID, "1.1.0", UpdateEvent.Source.FLATHUB);
+        publisher.publish(APP_ID, "1.1.0", UpdateEvent.Source.PORTAL);
+        publisher.publish(APP_ID, null, UpdateEvent.Source.PORTAL);
+        publisher.close();
+
+        assertTrue(subscriber.completed.await(10, TimeUnit.SECONDS));
+        assertEquals(List.of(UpdateEvent.Source.FLATHUB, UpdateEvent.Source.PORTAL),
+                subscriber.events.stream().map(UpdateEvent::source).toList());
+    }
+
+    @Test
+    void nonPositiveRequestFails() throws InterruptedException {
+        var publisher = new UpdateEventPublisher(executor, 16);
+        var subscriber = new Recorder(0, (_, _) -> {
+        });
+        publisher.subscribe(subscriber);
+        publisher.publish(APP_ID, "1.1.0", UpdateEvent.Source.FLATHUB);
+
+        assertTrue(subscriber.completed.await(10, TimeUnit.SECONDS));
+        assertInstanceOf(IllegalArgumentException.class, subscriber.error);
+        assertTrue(subscriber.events.isEmpty());
+        publisher.close();
+    }
+
+    @Test
+    void cancelledSubscriberGetsNothingMore() throws InterruptedException {
+        var publisher = new UpdateEventPublisher(executor, 16);
+        var first = new CountDownLatch(1);
+        var cancelling = new Recorder(Long.MAX_VALUE, (subscription, _) -> {
+            subscription.cancel();
+            first.countDown();
+        });
+        var watching = new Recorder(Long.MAX_VALUE, (_, _) -> {
+        });
+        publisher.subscribe(cancelling);
+        publisher.subscribe(watching);
+
+        publisher.publish(APP_ID, "1", UpdateEvent.Source.FLATHUB);
+        assertTrue(first.await(10, TimeUnit.SECONDS));
+        publisher.publish(APP_ID, "2", UpdateEvent.Source.FLATHUB);
+        publisher.publish(APP_ID, "3", UpdateEvent.Source.FLATHUB);
+        publisher.close();
+
+        assertTrue(watching.completed.await(10, TimeUnit.SECONDS));
+        assertEquals(List.of("1", "2", "3"), watching.versions());
+        assertEquals(List.of("1"), cancelling.versions());
+        assertEquals(1, cancelling.completed.getCount());
+    }
+
+    private static void await(CountDownLatch latch) {
+        try {
+            latch.await(10, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Requests {@code initialRequest} events and records what it gets, calling {@code onEvent} for every event.
+     */
+    private static final class Recorder implements Flow.Subscriber<UpdateEvent> {
+        private final long initialRequest;
+        private final BiConsumer<Flow.Subscription, UpdateEvent> onEvent;
+        private final List<UpdateEvent> events = new CopyOnWriteArrayList<>();
+        private final CountDownLatch completed = new CountDownLatch(1);
+        private volatile Flow.Subscription subscription;
+        private volatile Throwable error;
+
+        private Recorder(long initialRequest, BiConsumer<Flow.Subscription, UpdateEvent> onEvent) {
+            this.initialRequest = initialRequest;
+            this.onEvent = onEvent;
+        }
+
+        private List<String> versions() {
+            return events.stream().map(UpdateEvent::version).toList();
+        }
+
+        @Override
+        public void onSubscribe(Flow.Subscription subscription) {
+            this.subscription = subscription;
+            subscription.request(initialRequest);
+        }
+
+        @Override
+        public void onNext(UpdateEvent event) {
+            events.add(event);
+            onEvent.accept(subscription, event);
+        }
+
+        @Override
+        public void onError(Throwable throwable) {
+            error = throwable;
+            completed.countDown();
+        }
+
+        @Override
+        public void onComplete() {
+            completed.countDown();
+        }
+    }
+}
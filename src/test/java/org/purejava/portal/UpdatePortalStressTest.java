@@ -0,0 +1,73 @@
+package org.purejava.portal;
+
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Hammers the task registry of {@link UpdatePortal} from many threads, on a portal without a bus connection.
+ */
+class UpdatePortalStressTest {
+
+    private static final int THREADS = 16;
+    private static final int ITERATIONS = 10_000;
+    private static final List<String> APP_IDS = List.of("org.purejava.App", "org.gimp.GIMP", "org.mozilla.firefox", "org.gnome.Maps");
+
+    private static UpdatePortal portal;
+
+    @BeforeAll
+    static void setUp() {
+        portal = new UpdatePortal(null, null, null);
+    }
+
+    @AfterAll
+    static void tearDown() {
+        portal.close();
+    }
+
+    @Test
+    void setAndGetUpdateCheckerTasksConcurrently() throws Exception {
+        var gate = new CountDownLatch(1);
+        List<Future<?>> workers = new ArrayList<>();
+
+        try (var executor = Executors.newFixedThreadPool(THREADS)) {
+            for (int t = 0; t < THREADS; t++) {
+                workers.add(executor.submit(() -> {
+                    gate.await();
+                    var random = ThreadLocalRandom.current();
+                    for (int i = 0; i < ITERATIONS; i++) {
+                        var appId = APP_IDS.get(random.nextInt(APP_IDS.size()));
+                        if (random.nextBoolean()) {
+                            portal.setUpdateCheckerTaskFor(appId);
+                        } else {
+                            var task = portal.getUpdateCheckerTaskFor(appId);
+                            // a lookup never yields another app's task
+                            if (null != task) assertEquals(appId, task.getAppId());
+                        }
+                    }
+                    return null;
+                }));
+            }
+            gate.countDown();
+            for (Future<?> worker : workers) {
+                worker.get(1, TimeUnit.MINUTES);
+            }
+        }
+
+        for (String appId : APP_IDS) {
+            portal.setUpdateCheckerTaskFor(appId);
+            assertTrue(portal.isAppId(appId));
+            assertEquals(appId, portal.getUpdateCheckerTaskFor(appId).getAppId());
+        }
+    }
+}
@@ -54,6 +54,13 @@ class UpdatePortalTest {
         assertTrue(portal.getSupports() >= 1);
     }
 
+    @Test
+    void probe() {
+        var info = portal.probe();
+        assertEquals(portal.getVersion(), info.version());
+        assertEquals(portal.getSupports(), info.supports());
+    }
+
     @Test
     void createUpdateMonitor() {
         Map<String, Variant<?>> options = new HashMap<>();
@@ -0,0 +1,48 @@
+package org.purejava.portal;
+
+import org.freedesktop.dbus.types.UInt32;
+import org.freedesktop.dbus.types.Variant;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class UpdateProgressTrackerTest {
+
+    private static final String PATH = "/org/freedesktop/portal/Flatpak/update_monitor/test";
+    private static final long SECOND = TimeUnit.SECONDS.toNanos(1);
+
+    @Test
+    void progressTracking() {
+        var tracker = new UpdateProgressTracker(null, 3);
+        tracker.started(PATH, 0);
+        tracker.record(PATH, progress(0, 50, 0), SECOND);
+        tracker.record(PATH, progress(0, 100, 0), 2 * SECOND);
+        tracker.record(PATH, progress(1, 100, 0), 5 * SECOND);
+        var done = tracker.record(PATH, progress(1, 100, 2), 6 * SECOND);
+        assertNull(tracker.record(PATH, progress(1, 100, 2), 7 * SECOND));
+
+        assertEquals(ProgressEvent.Status.DONE, done.status());
+        assertEquals(Duration.ofSeconds(6), done.sinceUpdate());
+        assertEquals(2, done.nOps());
+        assertEquals(Duration.ofSeconds(6), tracker.getUpdateDurations().getPercentile(50));
+        assertEquals(2, tracker.getOpDurations().getCount());
+        assertEquals(Duration.ofSeconds(4), tracker.getOpDurations().getMax());
+        assertEquals(Duration.ofMillis(40), tracker.getTimePerPercent().getMax());
+
+        List<ProgressEvent> replayed = new ArrayList<>();
+        tracker.replay(replayed::add);
+        assertEquals(3, replayed.size());
+        assertSame(done, replayed.getLast());
+    }
+
+    private static Map<String, Variant<?>> progress(int op, int progress, int status) {
+        return Map.of("n_ops", new Variant<>(new UInt32(2)), "op", new Variant<>(new UInt32(op)),
+                "progress", new Variant<>(new UInt32(progress)), "status", new Variant<>(new UInt32(status)));
+    }
+}
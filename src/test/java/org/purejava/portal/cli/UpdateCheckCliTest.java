@@ -0,0 +1,40 @@
+package org.purejava.portal.cli;
+
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class UpdateCheckCliTest {
+
+    @Test
+    void parseOptions() {
+        var options = UpdateCheckCli.Options.parse(new String[]{"--daemon", "--interval", "60", "--parallel", "2", "org.gimp.GIMP", "org.gnome.Maps", "org.gimp.GIMP"});
+        assertTrue(options.daemon());
+        assertEquals(Duration.ofMinutes(1), options.interval());
+        assertEquals(2, options.parallel());
+        assertEquals(Set.of("org.gimp.GIMP", "org.gnome.Maps"), options.appIds());
+
+        var defaults = UpdateCheckCli.Options.parse(new String[0]);
+        assertFalse(defaults.daemon());
+        assertEquals(Duration.ofHours(1), defaults.interval());
+        assertEquals(8, defaults.parallel());
+        assertTrue(defaults.appIds().isEmpty());
+    }
+
+    @Test
+    void rejectInvalidOptions() {
+        assertInvalid("Unknown option: --verbose", "--verbose");
+        assertInvalid("Missing value for --interval", "--interval");
+        assertInvalid("Not a number for --parallel: many", "--parallel", "many");
+        assertInvalid("--interval must be at least 1 second", "--interval", "0");
+        assertInvalid("--parallel must be at least 1", "--parallel", "-1");
+    }
+
+    private static void assertInvalid(String message, String... args) {
+        var e = assertThrows(IllegalArgumentException.class, () -> UpdateCheckCli.Options.parse(args));
+        assertEquals(message, e.getMessage());
+    }
+}
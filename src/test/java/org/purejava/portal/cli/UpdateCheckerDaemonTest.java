@@ -0,0 +1,33 @@
+package org.purejava.portal.cli;
+
+import org.freedesktop.dbus.messages.DBusSignal;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class UpdateCheckerDaemonTest {
+
+    @Test
+    void signalChangedVersions() {
+        List<DBusSignal> sent = new CopyOnWriteArrayList<>();
+        var daemon = new UpdateCheckerDaemon(sent::add);
+        assertEquals("", daemon.GetVersion("org.gimp.GIMP"));
+
+        daemon.update("org.gimp.GIMP", "3.0.2");
+        daemon.update("org.gimp.GIMP", "3.0.2");
+        daemon.update("org.gnome.Maps", "48.2");
+        daemon.update("org.gimp.GIMP", "3.0.4");
+
+        assertEquals("3.0.4", daemon.GetVersion("org.gimp.GIMP"));
+        assertEquals(Map.of("org.gimp.GIMP", "3.0.4", "org.gnome.Maps", "48.2"), daemon.GetVersions());
+        assertEquals(List.of("org.gimp.GIMP 3.0.2", "org.gnome.Maps 48.2", "org.gimp.GIMP 3.0.4"), sent.stream()
+                .map(UpdateCheckerService.VersionChanged.class::cast)
+                .map(signal -> signal.appId + " " + signal.version)
+                .toList());
+        assertEquals(UpdateCheckerService.OBJECT_PATH, sent.getFirst().getPath());
+    }
+}
@@ -0,0 +1,47 @@
+package org.purejava.portal.freedesktop.dbus.handlers;
+
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class MessageHandlerTest {
+
+    @Test
+    void cancelPendingReleasesBlockedCall() throws Exception {
+        var handler = new MessageHandler(null);
+        var waiting = new CountDownLatch(1);
+        var interrupted = new CountDownLatch(1);
+        // stands in for a proxy call whose reply never comes
+        var caller = CompletableFuture.supplyAsync(() -> handler.invoke(() -> {
+            waiting.countDown();
+            try {
+                new CountDownLatch(1).await();
+            } catch (InterruptedException e) {
+                interrupted.countDown();
+            }
+            return "reply";
+        }), r -> Thread.ofVirtual().start(r));
+        assertTrue(waiting.await(10, TimeUnit.SECONDS));
+
+        // what UpdatePortal.close() does
+        handler.cancelPending();
+
+        assertNull(assertTimeoutPreemptively(Duration.ofSeconds(10), () -> caller.get()));
+        assertTrue(interrupted.await(10, TimeUnit.SECONDS));
+    }
+
+    @Test
+    void invokePassesResultAndFailure() {
+        var handler = new MessageHandler(null);
+        assertEquals("reply", handler.invoke(() -> "reply"));
+        var e = assertThrows(IllegalStateException.class, () -> handler.invoke(() -> {
+            throw new IllegalStateException("no portal");
+        }));
+        assertEquals("no portal", e.getMessage());
+    }
+}
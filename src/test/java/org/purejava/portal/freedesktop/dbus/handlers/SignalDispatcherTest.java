@@ -0,0 +1,103 @@
+package org.purejava.portal.freedesktop.dbus.handlers;
+
+import org.freedesktop.dbus.DBusMatchRule;
+import org.freedesktop.dbus.connections.impl.DBusConnection;
+import org.freedesktop.dbus.exceptions.DBusException;
+import org.freedesktop.dbus.interfaces.DBus;
+import org.freedesktop.dbus.interfaces.DBusSigHandler;
+import org.freedesktop.dbus.messages.DBusSignal;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class SignalDispatcherTest {
+
+    private static final String DBUS_PATH = "/org/freedesktop/DBus";
+    private static final String PORTAL = "org.freedesktop.portal.Flatpak";
+
+    private final FakeBus bus = new FakeBus();
+    private final SignalDispatcher signals = new SignalDispatcher(bus);
+
+    @Test
+    void oneMatchRulePerRoute() throws Exception {
+        List<String> first = new CopyOnWriteArrayList<>();
+        List<String> second = new CopyOnWriteArrayList<>();
+        var a = signals.subscribe(DBus.NameOwnerChanged.class, DBUS_PATH, PORTAL, s -> first.add(s.newOwner));
+        var b = signals.subscribe(DBus.NameOwnerChanged.class, DBUS_PATH, PORTAL, s -> second.add(s.newOwner));
+        signals.subscribe(DBus.NameOwnerChanged.class, DBUS_PATH, s -> fail("Routed to the rule without arg0"));
+        assertEquals(2, bus.rules.size());
+        assertTrue(bus.rules.getFirst().toString().contains(PORTAL), bus.rules.getFirst().toString());
+
+        bus.emit(0, new DBus.NameOwnerChanged(DBUS_PATH, PORTAL, "", ":1.42"));
+        assertEquals(List.of(":1.42"), first);
+        assertEquals(List.of(":1.42"), second);
+
+        a.close();
+        bus.emit(0, new DBus.NameOwnerChanged(DBUS_PATH, PORTAL, ":1.42", ":1.43"));
+        assertEquals(List.of(":1.42"), first);
+        assertEquals(List.of(":1.42", ":1.43"), second);
+        assertEquals(0, bus.closed.size());
+
+        b.close();
+        assertEquals(List.of(0), bus.closed);
+    }
+
+    @Test
+    void failingListenerDoesNotStopOthers() throws Exception {
+        List<String> received = new CopyOnWriteArrayList<>();
+        signals.subscribe(DBus.NameOwnerChanged.class, DBUS_PATH, _ -> {
+            throw new IllegalStateException("listener failed");
+        });
+        signals.subscribe(DBus.NameOwnerChanged.class, DBUS_PATH, s -> received.add(s.name));
+
+        bus.emit(0, new DBus.NameOwnerChanged(DBUS_PATH, PORTAL, "", ":1.42"));
+        assertEquals(List.of(PORTAL), received);
+    }
+
+    @Test
+    void resubscribeAfterLastUnsubscribe() throws Exception {
+        var subscription = signals.subscribe(DBus.NameOwnerChanged.class, DBUS_PATH, _ -> {
+        });
+        subscription.close();
+        subscription.close();
+        assertEquals(List.of(0), bus.closed);
+
+        signals.subscribe(DBus.NameOwnerChanged.class, DBUS_PATH, _ -> {
+        });
+        assertEquals(2, bus.rules.size());
+    }
+
+    @Test
+    void missingConnection() {
+        assertNull(new SignalDispatcher((DBusConnection) null)
+                .subscribe(DBus.NameOwnerChanged.class, DBUS_PATH, _ -> {
+                }));
+        assertNull(signals.subscribe(DBus.NameOwnerChanged.class, DBUS_PATH, null));
+    }
+
+    /**
+     * Records the match rules installed and hands signals to their handlers, as the bus would.
+     */
+    private static final class FakeBus implements SignalDispatcher.Registrar {
+        private final List<DBusMatchRule> rules = new ArrayList<>();
+        private final List<DBusSigHandler<?>> handlers = new ArrayList<>();
+        private final List<Integer> closed = new ArrayList<>();
+
+        @Override
+        public <T extends DBusSignal> AutoCloseable add(DBusMatchRule rule, DBusSigHandler<T> handler) throws DBusException {
+            var index = rules.size();
+            rules.add(rule);
+            handlers.add(handler);
+            return () -> closed.add(index);
+        }
+
+        @SuppressWarnings("unchecked")
+        private <T extends DBusSignal> void emit(int rule, T signal) {
+            ((DBusSigHandler<T>) handlers.get(rule)).handle(signal);
+        }
+    }
+}
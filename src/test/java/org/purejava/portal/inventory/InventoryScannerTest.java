@@ -0,0 +1,113 @@
+package org.purejava.portal.inventory;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class InventoryScannerTest {
+
+    private static final String GIMP_METAINFO = """
+            <?xml version="1.0" encoding="UTF-8"?>
+            <component type="desktop-application">
+              <id>org.gimp.GIMP</id>
+              <releases>
+                <release version="3.0.2" timestamp="1740000000"/>
+                <release version="3.0.4" timestamp="1748000000"/>
+                <release version="2.10.38" timestamp="1714000000"/>
+              </releases>
+            </component>
+            """;
+
+    private static final String MAPS_APPDATA = """
+            <?xml version="1.0" encoding="UTF-8"?>
+            <component type="desktop-application">
+              <id>org.gnome.Maps</id>
+              <releases>
+                <release version="48.2" date="2025-05-20"/>
+                <release version="48.1" date="2025-04-15"/>
+              </releases>
+            </component>
+            """;
+
+    // listed oldest first, with dates in different ISO-8601 forms
+    private static final String TOOL_METAINFO = """
+            <?xml version="1.0" encoding="UTF-8"?>
+            <component type="console-application">
+              <id>org.example.Tool</id>
+              <releases>
+                <release version="1.2" date="2024-01-10"/>
+                <release version="1.4" date="2024-09-01T12:00:00Z"/>
+                <release version="1.3" date="2024-05-02T08:30:00"/>
+                <release version="0.9"/>
+                <release version="1.5-rc" date="not a date"/>
+              </releases>
+            </component>
+            """;
+
+    @TempDir
+    Path root;
+
+    @Test
+    void scanFindsDeployedApps() throws IOException {
+        var system = root.resolve("system");
+        var user = root.resolve("user");
+        deploy(system, "org.gimp.GIMP", "x86_64", "stable", "aaa111", "metainfo", "metainfo.xml", GIMP_METAINFO);
+        deploy(user, "org.gnome.Maps", "x86_64", "stable", "bbb222", "appdata", "appdata.xml", MAPS_APPDATA);
+        // a ref without active deployment is not installed
+        Files.createDirectories(system.resolve("app/org.example.Gone/x86_64/stable"));
+
+        var scanner = new InventoryScanner(List.of(system, user, root.resolve("missing")));
+        var apps = scanner.scan();
+
+        assertEquals(List.of(
+                new InstalledApp("org.gimp.GIMP", "x86_64", "stable", "aaa111", "3.0.4", system),
+                new InstalledApp("org.gnome.Maps", "x86_64", "stable", "bbb222", "48.2", user)
+        ), apps);
+        assertEquals(Set.of("org.gimp.GIMP", "org.gnome.Maps"), scanner.appIds());
+    }
+
+    @Test
+    void rescanPicksUpNewCommit() throws IOException {
+        var system = root.resolve("system");
+        deploy(system, "org.gimp.GIMP", "x86_64", "stable", "aaa111", "metainfo", "metainfo.xml", GIMP_METAINFO);
+        var scanner = new InventoryScanner(List.of(system));
+        assertEquals("aaa111", scanner.scan().getFirst().commit());
+
+        deploy(system, "org.gimp.GIMP", "x86_64", "stable", "ccc333", "metainfo", "metainfo.xml",
+                GIMP_METAINFO.replace("3.0.4", "3.0.6"));
+        var app = scanner.scan().getFirst();
+        assertEquals("ccc333", app.commit());
+        assertEquals("3.0.6", app.version());
+        assertTrue(app.isOutdated("3.1.0"));
+        assertFalse(app.isOutdated("3.0.6"));
+    }
+
+    @Test
+    void newestReleaseByDate() throws IOException {
+        var metainfo = Files.writeString(root.resolve("org.example.Tool.metainfo.xml"), TOOL_METAINFO);
+        assertEquals("1.4", InventoryScanner.newestRelease(metainfo));
+
+        // a timestamp counts where present, here 2024-10-27
+        Files.writeString(metainfo, TOOL_METAINFO.replace("version=\"1.2\"", "version=\"1.2\" timestamp=\"1730000000\""));
+        assertEquals("1.2", InventoryScanner.newestRelease(metainfo));
+    }
+
+    private static void deploy(Path installation, String appId, String arch, String branch, String commit,
+                               String metainfoDir, String suffix, String metainfo) throws IOException {
+        var ref = installation.resolve("app").resolve(appId).resolve(arch).resolve(branch);
+        var share = Files.createDirectories(ref.resolve(commit).resolve("files/share").resolve(metainfoDir));
+        Files.writeString(share.resolve(appId + "." + suffix), metainfo);
+        Files.writeString(ref.resolve(commit).resolve("deploy"), "");
+
+        var active = ref.resolve("active");
+        Files.deleteIfExists(active);
+        Files.createSymbolicLink(active, Path.of(commit));
+    }
+}
@@ -0,0 +1,32 @@
+package org.purejava.portal.rest;
+
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class CircuitBreakerTest {
+
+    @Test
+    void onlyTheTrialReleasesHalfOpenBreaker() {
+        var breaker = new CircuitBreaker(1, Duration.ZERO);
+        var admitted = breaker.acquire();
+        assertNotNull(admitted);
+        breaker.onFailure();
+        assertEquals(CircuitBreaker.State.OPEN, breaker.getState());
+
+        var trial = breaker.acquire();
+        assertNotNull(trial);
+        assertEquals(CircuitBreaker.State.HALF_OPEN, breaker.getState());
+
+        // an earlier request cancelled now must not start a second trial
+        breaker.onIgnored(admitted);
+        assertEquals(CircuitBreaker.State.HALF_OPEN, breaker.getState());
+        assertNull(breaker.acquire());
+
+        breaker.onIgnored(trial);
+        assertEquals(CircuitBreaker.State.OPEN, breaker.getState());
+        assertNotNull(breaker.acquire());
+    }
+}
@@ -0,0 +1,114 @@
+package org.purejava.portal.rest;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.HashSet;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class FlathubClientTest {
+
+    private volatile int failures;
+    private volatile String retryAfter;
+    private FlathubStandIn flathub;
+    private FlathubClient client;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        flathub = new FlathubStandIn().publish("org.purejava.App", "1.1.0");
+        // the first requests fail with 503
+        flathub.setResponder((exchange, _, request) -> {
+            if (request > failures) return false;
+            if (null != retryAfter) exchange.getResponseHeaders().add("Retry-After", retryAfter);
+            FlathubStandIn.send(exchange, 503, null);
+            return true;
+        });
+        client = flathub.client();
+    }
+
+    @AfterEach
+    void tearDown() {
+        flathub.close();
+    }
+
+    @Test
+    void retriesUnavailable() throws Exception {
+        failures = 2;
+        retryAfter = "0";
+        client.setRetryPolicy(new RetryPolicy(3, Duration.ofMillis(10), Duration.ofMillis(100), 0.2));
+
+        assertEquals("1.1.0", client.latestVersion("org.purejava.App").get(5, TimeUnit.SECONDS));
+        assertEquals(3, flathub.requests());
+    }
+
+    @Test
+    void givesUpWhenRetryAfterIsTooLong() {
+        failures = 1;
+        retryAfter = "3600";
+        client.setRetryPolicy(new RetryPolicy(3, Duration.ofMillis(10), Duration.ofSeconds(30), 0.2));
+
+        var e = assertThrows(CompletionException.class, () -> client.latestVersion("org.purejava.App").join());
+        var cause = assertInstanceOf(FlathubException.class, e.getCause());
+        assertEquals(503, cause.getStatusCode());
+        assertEquals(Duration.ofHours(1), cause.getRetryAfter());
+        assertEquals(1, flathub.requests());
+    }
+
+    @Test
+    void retryBudgetIsShared() {
+        failures = Integer.MAX_VALUE;
+        retryAfter = null;
+        client.setCircuitBreaker(new CircuitBreaker(Integer.MAX_VALUE, Duration.ZERO));
+        client.setRetryPolicy(new RetryPolicy(2, Duration.ZERO, Duration.ZERO, 0.0));
+
+        var checks = (int) RetryPolicy.BUDGET_CAP * 2;
+        for (int i = 0; i < checks; i++) {
+            assertThrows(CompletionException.class, () -> client.latestVersion("org.purejava.App").join());
+        }
+        assertEquals(checks + (int) RetryPolicy.BUDGET_CAP, flathub.requests());
+    }
+
+    @Test
+    void firstRetriesAreJittered() {
+        var policy = new RetryPolicy(3, Duration.ofMillis(100), Duration.ofSeconds(10), 0.0);
+        var delays = new HashSet<Duration>();
+        for (int i = 0; i < (int) RetryPolicy.BUDGET_CAP; i++) {
+            var delay = policy.nextDelay(1, Duration.ZERO, new FlathubException(503));
+            assertTrue(delay.compareTo(Duration.ofMillis(100)) >= 0 && delay.compareTo(Duration.ofMillis(300)) <= 0);
+            delays.add(delay);
+        }
+        assertTrue(delays.size() > 1);
+    }
+
+    @Test
+    void malformedAppIdFails() {
+        var e = assertThrows(CompletionException.class, () -> client.latestVersion("org.foo bar").join());
+        assertInstanceOf(IllegalArgumentException.class, e.getCause());
+        assertEquals(0, flathub.requests());
+
+        // also when the request is delayed by the rate limiter
+        client.setRateLimiter(new TokenBucket(1, 100.0));
+        client.latestVersion("org.purejava.App").join();
+        var delayed = client.latestVersion("org.foo bar");
+        assertInstanceOf(IllegalArgumentException.class,
+                assertThrows(ExecutionException.class, () -> delayed.get(5, TimeUnit.SECONDS)).getCause());
+    }
+
+    @Test
+    void parseRetryAfter() {
+        var now = Instant.parse("2015-10-21T07:28:00Z");
+        assertEquals(Duration.ofSeconds(120), FlathubException.retryAfter(" 120 ", now));
+        assertEquals(Duration.ofSeconds(60), FlathubException.retryAfter("Wed, 21 Oct 2015 07:29:00 GMT", now));
+        assertEquals(Duration.ZERO, FlathubException.retryAfter("Wed, 21 Oct 2015 07:27:00 GMT", now));
+        assertNull(FlathubException.retryAfter("soon", now));
+        assertNull(FlathubException.retryAfter("-1", now));
+    }
+}
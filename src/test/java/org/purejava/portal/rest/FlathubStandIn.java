@@ -0,0 +1,113 @@
+package org.purejava.portal.rest;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Local stand-in for the Flathub appstream API, serving {@code /appstream/<appId>} for the published apps
+ * and 404 for all others.
+ */
+final class FlathubStandIn implements AutoCloseable {
+
+    /**
+     * Answers a request instead of the stand-in.
+     */
+    @FunctionalInterface
+    interface Responder {
+        /**
+         * @return true if the exchange was answered, false to let the stand-in answer it
+         */
+        boolean respond(HttpExchange exchange, String appId, int request) throws IOException;
+    }
+
+    private final HttpServer server;
+    private final Map<String, String> versions = new ConcurrentHashMap<>();
+    private final AtomicInteger requests = new AtomicInteger();
+    private volatile Responder responder = (_, _, _) -> false;
+
+    FlathubStandIn() throws IOException {
+        server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 0);
+        server.createContext("/appstream/", this::handle);
+        server.setExecutor(Executors.newVirtualThreadPerTaskExecutor());
+        server.start();
+    }
+
+    /**
+     * Publishes {@code version} as the newest release of {@code appId}, next to an older one.
+     */
+    FlathubStandIn publish(String appId, String version) {
+        versions.put(appId, version);
+        return this;
+    }
+
+    void setResponder(Responder responder) {
+        this.responder = responder;
+    }
+
+    int requests() {
+        return requests.get();
+    }
+
+    void resetRequests() {
+        requests.set(0);
+    }
+
+    URI uri() {
+        return URI.create("http://" + server.getAddress().getHostString() + ":" + server.getAddress().getPort() + "/");
+    }
+
+    /**
+     * @return a new client for the stand-in that is practically not rate limited
+     */
+    FlathubClient client() {
+        var client = new FlathubClient(uri());
+        client.setRateLimiter(new TokenBucket(1_000_000, 1_000_000.0));
+        return client;
+    }
+
+    @Override
+    public void close() {
+        server.stop(0);
+    }
+
+    static void send(HttpExchange exchange, int status, String body) throws IOException {
+        if (null == body) {
+            exchange.sendResponseHeaders(status, -1);
+            exchange.close();
+            return;
+        }
+        var bytes = body.getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().add("Content-Type", "application/json");
+        exchange.sendResponseHeaders(status, bytes.length);
+        try (var out = exchange.getResponseBody()) {
+            out.write(bytes);
+        }
+    }
+
+    private void handle(HttpExchange exchange) throws IOException {
+        var request = requests.incrementAndGet();
+        var appId = exchange.getRequestURI().getPath().substring("/appstream/".length());
+        if (responder.respond(exchange, appId, request)) return;
+
+        var version = versions.get(appId);
+        if (null == version) {
+            send(exchange, 404, null);
+            return;
+        }
+        send(exchange, 200, """
+                {"id":"%s","releases":[
+                  {"version":"0.9.0","timestamp":"1700000000"},
+                  {"version":"%s","timestamp":"1710000000"}
+                ]}""".formatted(appId, version));
+    }
+}
@@ -0,0 +1,29 @@
+package org.purejava.portal.rest;
+
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class TokenBucketTest {
+
+    @Test
+    void refusedRequestsTakeNoToken() throws InterruptedException {
+        var bucket = new TokenBucket(2, 10.0);
+        var maxWait = Duration.ofMillis(100);
+
+        assertEquals(Duration.ZERO, bucket.tryReserve(maxWait));
+        assertEquals(Duration.ZERO, bucket.tryReserve(maxWait));
+        assertNotNull(bucket.tryReserve(maxWait));
+        for (int i = 0; i < 1_000; i++) {
+            assertNull(bucket.tryReserve(maxWait));
+        }
+
+        // the third request borrowed the token due after 100 ms, the next one is due after 200 ms
+        Thread.sleep(150);
+        var wait = bucket.tryReserve(maxWait);
+        assertNotNull(wait);
+        assertTrue(wait.compareTo(maxWait) <= 0);
+    }
+}
@@ -0,0 +1,151 @@
+package org.purejava.portal.rest;
+
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Hammers {@link UpdateCheckerTask} from many threads against a local stand-in for Flathub.
+ */
+class UpdateCheckerTaskStressTest {
+
+    private static final int THREADS = 16;
+    private static final int ITERATIONS = 2_000;
+    private static final String SLOW_APP = "org.purejava.SlowApp";
+
+    private static volatile CountDownLatch slowResponse = new CountDownLatch(0);
+    private static FlathubStandIn flathub;
+    private static FlathubClient client;
+
+    @BeforeAll
+    static void setUp() throws IOException {
+        flathub = new FlathubStandIn()
+                .publish("org.purejava.App", "1.1.0")
+                .publish(SLOW_APP, "1.1.0");
+        flathub.setResponder((_, appId, _) -> {
+            if (SLOW_APP.equals(appId)) awaitQuietly(slowResponse);
+            return false;
+        });
+        client = flathub.client();
+    }
+
+    @AfterAll
+    static void tearDown() {
+        flathub.close();
+    }
+
+    @Test
+    void concurrentStartRunsOneCheck() throws Exception {
+        var task = new UpdateCheckerTask("org.purejava.App", client);
+        var running = new AtomicInteger();
+        var done = new CountDownLatch(1);
+        task.setOnRunning(running::incrementAndGet);
+        task.setOnSucceeded(_ -> done.countDown());
+        task.setOnFailed(t -> fail("Expected success but failed: " + t));
+
+        flathub.resetRequests();
+        runConcurrently(_ -> task.start(), 1);
+
+        assertTrue(done.await(10, TimeUnit.SECONDS), "Task timed out");
+        assertEquals(1, running.get());
+        assertEquals(1, flathub.requests());
+    }
+
+    @Test
+    void startCancelAndResetRace() throws Exception {
+        var task = new UpdateCheckerTask("org.purejava.App", client);
+        var succeeded = new AtomicInteger();
+        var failed = new AtomicInteger();
+        task.setOnSucceeded(version -> {
+            assertEquals("1.1.0", version);
+            succeeded.incrementAndGet();
+        });
+        task.setOnFailed(_ -> failed.incrementAndGet());
+
+        runConcurrently(_ -> {
+            switch (ThreadLocalRandom.current().nextInt(3)) {
+                case 0 -> task.start();
+                case 1 -> task.cancel();
+                default -> task.reset();
+            }
+        }, ITERATIONS);
+
+        // cancelled checks stay silent, they are not reported as failures
+        assertEquals(0, failed.get());
+
+        var done = new CountDownLatch(1);
+        task.setOnSucceeded(_ -> done.countDown());
+        task.reset();
+        task.start();
+        assertTrue(done.await(10, TimeUnit.SECONDS), "Task is not usable anymore after the race");
+    }
+
+    @Test
+    void callbacksSetConcurrentlyAreSeen() throws Exception {
+        for (int i = 0; i < 200; i++) {
+            var task = new UpdateCheckerTask(SLOW_APP, client);
+            var done = new CountDownLatch(1);
+            var gate = new CountDownLatch(1);
+            // the response is held back until the callback is set, which races with start()
+            slowResponse = new CountDownLatch(1);
+            var starter = Thread.ofPlatform().start(() -> {
+                awaitQuietly(gate);
+                task.start();
+            });
+            var setter = Thread.ofPlatform().start(() -> {
+                awaitQuietly(gate);
+                task.setOnSucceeded(_ -> done.countDown());
+                slowResponse.countDown();
+            });
+            gate.countDown();
+            assertTrue(done.await(10, TimeUnit.SECONDS), "Callback set on another thread was not invoked");
+            starter.join();
+            setter.join();
+        }
+    }
+
+    private static void awaitQuietly(CountDownLatch latch) {
+        try {
+            latch.await();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private static void runConcurrently(ThrowingIntConsumer action, int iterations) throws Exception {
+        var gate = new CountDownLatch(1);
+        List<Future<?>> workers = new ArrayList<>();
+        try (var executor = Executors.newFixedThreadPool(THREADS)) {
+            for (int t = 0; t < THREADS; t++) {
+                workers.add(executor.submit(() -> {
+                    gate.await();
+                    for (int i = 0; i < iterations; i++) {
+                        action.accept(i);
+                    }
+                    return null;
+                }));
+            }
+            gate.countDown();
+            for (Future<?> worker : workers) {
+                worker.get(1, TimeUnit.MINUTES);
+            }
+        }
+    }
+
+    @FunctionalInterface
+    private interface ThrowingIntConsumer {
+        void accept(int i) throws Exception;
+    }
+}
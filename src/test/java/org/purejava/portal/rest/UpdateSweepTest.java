@@ -0,0 +1,114 @@
+package org.purejava.portal.rest;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class UpdateSweepTest {
+
+    private FlathubStandIn flathub;
+    private FlathubClient client;
+    private final Map<String, String> versions = new ConcurrentHashMap<>();
+    private final Map<String, Throwable> failures = new ConcurrentHashMap<>();
+
+    @BeforeEach
+    void setUp() throws IOException {
+        flathub = new FlathubStandIn()
+                .publish("org.gimp.GIMP", "3.0.4")
+                .publish("org.gnome.Maps", "48.2");
+        client = flathub.client();
+    }
+
+    @AfterEach
+    void tearDown() {
+        flathub.close();
+    }
+
+    @Test
+    void reportsEveryApp() throws Exception {
+        var sweep = new UpdateSweep(tasks("org.gimp.GIMP", "org.gnome.Maps", "org.example.Missing", "org.foo bar"), client);
+        sweep.start().get(10, TimeUnit.SECONDS);
+
+        assertEquals(Map.of("org.gimp.GIMP", "3.0.4", "org.gnome.Maps", "48.2"), versions);
+        assertEquals(404, assertInstanceOf(FlathubException.class, failures.get("org.example.Missing")).getStatusCode());
+        assertInstanceOf(IllegalArgumentException.class, failures.get("org.foo bar"));
+        // one request per app that can be asked for, nothing else
+        assertEquals(3, flathub.requests());
+    }
+
+    @Test
+    void boundsRequestsInFlight() throws Exception {
+        var inFlight = new AtomicInteger();
+        var maxInFlight = new AtomicInteger();
+        flathub.setResponder((_, _, _) -> {
+            maxInFlight.accumulateAndGet(inFlight.incrementAndGet(), Math::max);
+            try {
+                Thread.sleep(20);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            inFlight.decrementAndGet();
+            return false;
+        });
+        var appIds = new ArrayList<String>();
+        for (int i = 0; i < 20; i++) {
+            appIds.add("org.gimp.GIMP" + i);
+            flathub.publish("org.gimp.GIMP" + i, "3.0." + i);
+        }
+
+        var sweep = new UpdateSweep(tasks(appIds.toArray(String[]::new)), client);
+        sweep.setMaxConcurrentRequests(3);
+        sweep.start().get(10, TimeUnit.SECONDS);
+
+        assertEquals(20, versions.size());
+        assertTrue(maxInFlight.get() <= 3, "At most 3 requests in flight, but saw " + maxInFlight.get());
+    }
+
+    @Test
+    void cancelStopsReporting() throws Exception {
+        var held = new CountDownLatch(1);
+        var release = new CountDownLatch(1);
+        flathub.setResponder((_, _, _) -> {
+            held.countDown();
+            try {
+                release.await(10, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            return false;
+        });
+
+        var sweep = new UpdateSweep(tasks("org.gimp.GIMP", "org.gnome.Maps"), client);
+        var future = sweep.start();
+        assertTrue(held.await(10, TimeUnit.SECONDS));
+        sweep.cancel();
+        release.countDown();
+
+        assertThrows(CancellationException.class, future::join);
+        assertTrue(versions.isEmpty());
+        assertTrue(failures.isEmpty());
+    }
+
+    private List<UpdateCheckerTask> tasks(String... appIds) {
+        List<UpdateCheckerTask> tasks = new ArrayList<>();
+        for (String appId : appIds) {
+            var task = new UpdateCheckerTask(appId, client);
+            task.setOnSucceeded(version -> versions.put(appId, version));
+            task.setOnFailed(t -> failures.put(appId, t));
+            tasks.add(task);
+        }
+        return tasks;
+    }
+}